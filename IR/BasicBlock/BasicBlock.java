@@ -1,9 +1,13 @@
 package IR.BasicBlock;
 
-import IR.Instruction.BinaryInstr;
+import IR.Context.CompilationContext;
 import IR.Instruction.Instruction;
+import IR.Instruction.InstructionList;
 import IR.Instruction.UnaryInstr;
-import IR.Search.OpSearcher;
+import IR.Search.DefinitionCache;
+import IR.Search.PersistentIntIntMap;
+import IR.Search.PersistentIntMap;
+import IR.Search.ValueTable;
 
 import java.util.*;
 
@@ -16,23 +20,25 @@ import java.util.*;
  *                  each basic block contains 4 pointers to 2 possible children and 2 possible parents. Each pointer
  *                  is specified by its relationship to this block as either Branch or Fallthrough.
  *
- *  INSTRUCTIONS:   each basic block contains a linearly linked list of instructions generated within this block
+ *  INSTRUCTIONS:   each basic block contains an intrusive linked list of instructions generated within this block,
+ *                  phis are kept together at the head of the list
  *
  *  SYMBOL TABLE:   Identifier ID's mapped to its instruction value. The complete symbol table exists only in un-nested
  *                  join/follow blocks. All nested blocks only keep mappings of identifiers that were assigned within
- *                  that block. Recursively search upstream if cannot find.
+ *                  that block. Search upstream if cannot find, the definitions found upstream are memoized per block
+ *                  (DefinitionCache) until a symbol table or the CFG shape changes.
+ *                  Persistent map, so a complete table is built on top of the parent's without copying it. An inverse
+ *                  index (instruction id -> identifier id, primitive ints) answers getIdentifierFromInstruction. It
+ *                  only holds live bindings: re-binding an identifier drops the entry of its old instruction.
  *
- *  OP SEARCHER:    the search data structure which keeps track of instructions in dominator order, used for CSE
+ *  VALUE TABLE:    scoped value-numbering table of the pure instructions computed in this block and its dominators,
+ *                  used for CSE
  *
  *  */
 public class BasicBlock
 {
-    // static variables for graph debugging
-    public static int blockIdCounter = 1;
-    public static ArrayList<BasicBlock> allBlocks = new ArrayList<>();
-
     // BasicBlock attributes
-    private final int blockId;
+    private int blockId;
     private final HashSet<BlockType> blockTypes;
     private BasicBlock fallThruTo;
     private BasicBlock branchTo;
@@ -40,9 +46,12 @@ public class BasicBlock
     private BasicBlock branchFrom;
 
     // BasicBlock Data Structures
-    private final LinkedList<Instruction> instructions;
-    private final HashMap<Integer, Instruction> symbolTable;
-    private final OpSearcher opSearcher;
+    private final InstructionList instructions;
+    private PersistentIntMap<Instruction> symbolTable;
+    private PersistentIntIntMap identifierOf;           // inverse of symbolTable, one identifier per instruction
+    private final DefinitionCache upstreamDefinitions;
+    private final DefinitionCache.Clock clock;
+    private final ValueTable valueTable;
 
     public enum BlockType {
         BASIC,
@@ -50,16 +59,19 @@ public class BasicBlock
         WHILE, WHILE_BODY, WHILE_FOLLOW
     }
 
-    public BasicBlock(BlockType blockType) {
-        this.blockId = BasicBlock.blockIdCounter++;
+    /** block ids are handed out by the compile's context, which also keeps every block for graph debugging */
+    public BasicBlock(CompilationContext context, BlockType blockType) {
         this.blockTypes = new HashSet<>();
         this.blockTypes.add(blockType);
 
-        this.instructions = new LinkedList<>();
-        this.symbolTable = new HashMap<>();
-        this.opSearcher = new OpSearcher();
+        this.instructions = new InstructionList();
+        this.symbolTable = PersistentIntMap.empty();
+        this.identifierOf = PersistentIntIntMap.empty();
+        this.valueTable = new ValueTable();
+        this.clock = context.getDefinitionClock();
+        this.upstreamDefinitions = new DefinitionCache(clock);
 
-        allBlocks.add(this);
+        this.blockId = context.registerBlock(this);
     }
 
     // ---------- ACCESS/CFG-LINKING METHODS ----------- //
@@ -68,6 +80,11 @@ public class BasicBlock
         return blockId;
     }
 
+    /** shifts this block's id by offset. Only used when a CompilationContext joins a forked context. */
+    public void renumber(int offset) {
+        this.blockId += offset;
+    }
+
     public boolean isBlockType(BlockType blockType) {
         //System.out.printf("bb%d has blocktypes %s\n", this.getBlockId(), blockTypes.toString());
         return this.blockTypes.contains(blockType);
@@ -75,6 +92,7 @@ public class BasicBlock
 
     public void addBlockType(BlockType blockType) {
         this.blockTypes.add(blockType);
+        clock.shapeChanged();           // lookups follow different parents per block type
     }
 
     public BasicBlock getFallThruTo() {
@@ -102,6 +120,7 @@ public class BasicBlock
             this.branchTo = branchTo;
             //System.out.printf("---------bb%d's branchTo set to bb%d----------\n", this.getBlockId(), branchTo.getBlockId());
             branchTo.branchFrom = this;
+            clock.shapeChanged();
         }
     }
 
@@ -110,6 +129,7 @@ public class BasicBlock
             this.branchFrom = branchParent;
             //System.out.printf("---------bb%d's branchFrom set to bb%d----------\n", this.getBlockId(), branchParent.getBlockId());
             branchParent.branchTo = this;
+            clock.shapeChanged();
         }
     }
 
@@ -118,6 +138,7 @@ public class BasicBlock
             this.fallThruTo = fallThruTo;
             //System.out.printf("---------bb%d's fallThruTo set to bb%d----------\n", this.getBlockId(), fallThruTo.getBlockId());
             fallThruTo.fallThruFrom = this;
+            clock.shapeChanged();
         }
     }
 
@@ -126,6 +147,7 @@ public class BasicBlock
             this.fallThruFrom = fallThruParent;
             //System.out.printf("---------bb%d's fallThruFrom set to bb%d----------\n", this.getBlockId(), fallThruParent.getBlockId());
             fallThruParent.fallThruTo = this;
+            clock.shapeChanged();
         }
     }
 
@@ -133,6 +155,7 @@ public class BasicBlock
         if (fallThruParent != null) {
             this.fallThruFrom = null;
             fallThruParent.fallThruTo = null;
+            clock.shapeChanged();
         }
     }
 
@@ -141,9 +164,46 @@ public class BasicBlock
             this.branchTo = null;
             //System.out.printf("---------bb%d's branch to bb%d deleted----------\n", this.getBlockId(), branchParent.getBlockId());
             branchParent.branchFrom = null;
+            clock.shapeChanged();
         }
     }
 
+    /** removes the edge to successor (fallthrough or branch). successor's From pointer is only cleared if it still
+     *  points back to this block. */
+    public void unlinkSuccessor(BasicBlock successor) {
+        if (fallThruTo == successor) {
+            fallThruTo = null;
+            if (successor.fallThruFrom == this) {
+                successor.fallThruFrom = null;
+            }
+        }
+        if (branchTo == successor) {
+            branchTo = null;
+            if (successor.branchFrom == this) {
+                successor.branchFrom = null;
+            }
+        }
+        clock.shapeChanged();
+    }
+
+    /** removes every edge into and out of this block its pointers know of, for a block being removed from the CFG */
+    public void detach() {
+        if (fallThruTo != null) {
+            unlinkSuccessor(fallThruTo);
+        }
+        if (branchTo != null) {
+            unlinkSuccessor(branchTo);
+        }
+        if (fallThruFrom != null) {
+            fallThruFrom.unlinkSuccessor(this);
+        }
+        if (branchFrom != null) {
+            branchFrom.unlinkSuccessor(this);
+        }
+        fallThruFrom = null;
+        branchFrom = null;
+    }
+
 
     // --------- METHODS FOR INSTRUCTION GENERATION ---------- //
 
@@ -158,105 +218,169 @@ public class BasicBlock
                 fallThruTo.branchFrom.isBlockType(BlockType.IF);
     }
 
-    public LinkedList<Instruction> getInstructions() {
+    public InstructionList getInstructions() {
         return instructions;
     }
 
-    public HashMap<Integer, Instruction> getSymbolTable() {
+    public PersistentIntMap<Instruction> getSymbolTable() {
         return symbolTable;
     }
 
     public boolean containsPhiAssignment(int id) {
-        return symbolTable.containsKey(id) && symbolTable.get(id) != null &&
-                symbolTable.get(id).getOpType() == Instruction.Op.PHI;
+        Instruction value = symbolTable.get(id);
+        return value != null && value.getOpType() == Instruction.Op.PHI;
     }
 
     public void addVarDecl(int id) {
-        symbolTable.put(id, null);
+        unindex(id);
+        symbolTable = symbolTable.put(id, null);
+        clock.identifierWritten(id);
     }
 
     public void insertInstruction(Instruction i) {
-        if (isBlockType(BlockType.WHILE) && i.getOpType() == Instruction.Op.PHI) {
-            int index = instructions.size()-2;
-            instructions.add(index, i);
-        }
         // remove dummy instruction
         // when removing the dummy BRANCH_TO, update whatever instruction is branching to that deleted instr
-        else if (instructions.size() >= 1 && instructions.getFirst().getOpType() == Instruction.Op.BRANCH_TO) {
-            instructions.removeFirst();
-            instructions.add(i);
-            if (branchFrom != null) {
-                ((UnaryInstr)branchFrom.instructions.getLast()).setOp(i);
-            }
+        boolean replacesDummy = !instructions.isEmpty() && instructions.getFirst().getOpType() == Instruction.Op.BRANCH_TO;
+        if (replacesDummy) {
+            instructions.removeFirst().setBlockId(0);
+        }
+        if (i.getOpType() == Instruction.Op.PHI) {
+            instructions.addPhi(i);     // phi segment at the head, e.g. before the cmp & branch of a while-block
+        } else {
+            instructions.addLast(i);
         }
-        else {
-            instructions.add(i);
+        i.setBlockId(blockId);
+        if (replacesDummy && branchFrom != null) {
+            ((UnaryInstr)branchFrom.instructions.getLast()).setOp(i);
         }
-        if (i.isAddSubDivMul()) {
+        if (i.isPureValue()) {
             insertOp(i);
         }
     }
 
     /** adds the id:instruction pair if not exists in currentBlock, if exists, overrides the current value */
     public void setIdentifierToInstr(int id, Instruction i) {
-        symbolTable.put(id, i);
+        unindex(id);
+        symbolTable = symbolTable.put(id, i);
+        clock.identifierWritten(id);
+        if (i != null) {
+            identifierOf = identifierOf.put(i.getId(), id);
+        }
     }
 
-    /** rely on each individual block to be able to locate the most recent definition of a variable */
+    /** drops the inverse entry of id's current value, if the index attributes that instruction to id */
+    private void unindex(int id) {
+        Instruction old = symbolTable.get(id);
+        if (old != null && identifierOf.get(old.getId()) == id) {
+            identifierOf = identifierOf.remove(old.getId());
+        }
+    }
+
+    /** rely on each individual block to be able to locate the most recent definition of a variable. Walks upstream
+     *  until a block defines id or has memoized its definition, then memoizes it in every block walked through. */
     public Instruction getIdentifierInstruction(int id) {
-        if (symbolTable.containsKey(id)) {
-            return symbolTable.get(id);
-        } else {
-            // ifThen, ifElse, ifJoin, whileBody, whileFollow
-            if (isBlockType(BlockType.IF_ELSE) || isBlockType(BlockType.WHILE_FOLLOW)) {
-                return branchFrom.getIdentifierInstruction(id);
+        BasicBlock block = this;
+        ArrayList<BasicBlock> walked = null;
+        Instruction definition;
+        while (true) {
+            definition = block.symbolTable.get(id);
+            if (definition != null || block.symbolTable.containsKey(id)) {
+                break;
             }
-            // if IF_JOIN doesn't have the id, that means there's no phi, which means neither then/else modified it
-            else {  // IF_THEN, IF_JOIN, WHILE_BODY
-                return fallThruFrom.getIdentifierInstruction(id);
+            int slot = block.upstreamDefinitions.find(id);
+            if (slot >= 0) {
+                definition = block.upstreamDefinitions.definitionAt(slot);
+                break;
+            }
+            if (walked == null) {
+                walked = new ArrayList<>();
+            }
+            walked.add(block);
+            block = block.upstreamFor();
+        }
+        if (walked != null) {
+            for (BasicBlock b : walked) {
+                b.upstreamDefinitions.put(id, definition);
             }
         }
+        return definition;
+    }
+
+    /** block holding the definitions visible at the top of this block */
+    private BasicBlock upstreamFor() {
+        // ifThen, ifElse, ifJoin, whileBody, whileFollow
+        if (isBlockType(BlockType.IF_ELSE) || isBlockType(BlockType.WHILE_FOLLOW)) {
+            return branchFrom;
+        }
+        // if IF_JOIN doesn't have the id, that means there's no phi, which means neither then/else modified it
+        else {  // IF_THEN, IF_JOIN, WHILE_BODY
+            return fallThruFrom;
+        }
     }
 
     /** return the identifier ID given an instruction ID. used in PropagateNestedWhile() to find the identifier id referred
      *  to by a certain phi */
     public int getIdentifierFromInstruction(int instrId) {
-        for (Map.Entry<Integer, Instruction> set : symbolTable.entrySet()) {
-            if (set.getValue().getId() == instrId) {
-                return set.getKey();
+        int id = identifierOf.get(instrId);
+        if (id != PersistentIntIntMap.NO_VALUE && symbolTable.get(id) != null && symbolTable.get(id).getId() == instrId) {
+            return id;
+        }
+        // the index keeps one identifier per instruction, another identifier bound to the same value may hold it
+        for (int key : symbolTable.keys()) {
+            Instruction value = symbolTable.get(key);
+            if (value != null && value.getId() == instrId) {
+                return key;
             }
         }
         return -1;
     }
 
-    /** gives currentBlock a complete copy of its parent's symbolTable */
+    /** gives currentBlock a complete table: its own mappings over its parent's. The parent's table is shared, only
+     *  this block's own mappings are added to it. */
     public void updateSymbolTableFromParent(BasicBlock parent) {
-        HashMap<Integer, Instruction> parentSymTab = parent.getSymbolTable();
-        // for while blocks, their fallThruFrom contains the complete symtab
-        for (Map.Entry<Integer, Instruction> pair : parentSymTab.entrySet()) {
-            if (!symbolTable.containsKey(pair.getKey())) {
-                symbolTable.put(pair.getKey(), pair.getValue());
+        PersistentIntMap<Instruction> complete = parent.symbolTable;
+        PersistentIntIntMap completeInverse = parent.identifierOf;
+        // for while blocks, their fallThruFrom contains the complete symtab, the while block only its phis
+        if (parent.isBlockType(BlockType.WHILE) && parent.getFallThruFrom() != null) {
+            complete = parent.getFallThruFrom().symbolTable.putAll(complete);
+            completeInverse = withoutShadowed(parent.getFallThruFrom().identifierOf, parent.getFallThruFrom().symbolTable,
+                                              parent.symbolTable).putAll(completeInverse);
+        }
+        identifierOf = withoutShadowed(completeInverse, complete, symbolTable).putAll(identifierOf);
+        symbolTable = complete.putAll(symbolTable);
+        clock.shapeChanged();
+    }
+
+    /** inverse without the entries of the identifiers table binds that overriding re-binds */
+    private static PersistentIntIntMap withoutShadowed(PersistentIntIntMap inverse, PersistentIntMap<Instruction> table,
+                                                       PersistentIntMap<Instruction> overriding) {
+        for (int id : overriding.keys()) {
+            Instruction old = table.get(id);
+            if (old != null && inverse.get(old.getId()) == id) {
+                inverse = inverse.remove(old.getId());
             }
         }
-        if (parent.isBlockType(BlockType.WHILE) && parent.getFallThruFrom() != null) {
-            HashMap<Integer, Instruction> parentFallThru = parent.getFallThruFrom().getSymbolTable();
-            for (Map.Entry<Integer, Instruction> pair : parentFallThru.entrySet()) {
-                if (!symbolTable.containsKey(pair.getKey())) {
-                    symbolTable.put(pair.getKey(), pair.getValue());
-                }
+        return inverse;
+    }
+
+    /** replaces the whole symbol table, used once optimization rebinds it to the remaining instructions */
+    public void setSymbolTable(PersistentIntMap<Instruction> table) {
+        symbolTable = table;
+        identifierOf = PersistentIntIntMap.empty();
+        for (int id : table.keys()) {
+            Instruction value = table.get(id);
+            if (value != null) {
+                identifierOf = identifierOf.put(value.getId(), id);
             }
         }
+        clock.shapeChanged();
     }
 
     /**  random method that returns the id of the first instruction in the while block that is not phi
      *  (used for while-phi-propagation) */
     public int getFirstNonPhiInstrId() {
-        for (Instruction instr : instructions) {
-            if (instr.getOpType() != Instruction.Op.PHI) {
-                return instr.getId();
-            }
-        }
-        return -1;
+        Instruction instr = instructions.firstNonPhi();
+        return instr != null ? instr.getId() : -1;
     }
 
     public Instruction getFirstInstr() {
@@ -264,26 +388,33 @@ public class BasicBlock
     }
 
 
-    // ---------------------- OP-SEARCH METHODS ------------------------ //
+    // ---------------------- VALUE-TABLE METHODS ------------------------ //
 
-    /** adds instruction into opSearcher */
+    /** adds instruction into valueTable */
     private void insertOp(Instruction i) {
-        opSearcher.addInstruction(i);
+        valueTable.addInstruction(i);
     }
 
     /** finds an already-computed common expression that not only has the same operands, but its operands refer to the
      *  same identifiers */
-    public BinaryInstr searchExactMatch(Instruction i) {
-        return opSearcher.searchExactMatch((BinaryInstr) i);
+    public Instruction searchExactMatch(Instruction i) {
+        return valueTable.searchExactMatch(i);
     }
 
     /** checks if the given instruction has already been computed (same operands), returns if it has */
-    public BinaryInstr searchIfComputed(Instruction i) {
-        return opSearcher.searchIfComputed((BinaryInstr)i);
+    public Instruction searchIfComputed(Instruction i) {
+        return valueTable.searchIfComputed(i);
+    }
+
+    /** re-indexes a pure instruction whose operands were replaced, oldKey is its ValueTable.valueKey from before */
+    public void valueOperandsChanged(Instruction i, int oldKey) {
+        if (i.isPureValue()) {
+            valueTable.operandsChanged(i, oldKey);
+        }
     }
 
-    /** update this block's opSearcher to have the same headNodes as the other block */
+    /** update this block's valueTable to share the snapshot of the dominator's table, O(1) */
     public void inheritOpSearchFrom(BasicBlock dom) {
-        opSearcher.inherit(dom.opSearcher);
+        valueTable.inherit(dom.valueTable);
     }
 }
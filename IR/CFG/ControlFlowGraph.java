@@ -0,0 +1,146 @@
+package IR.CFG;
+
+import IR.BasicBlock.BasicBlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**                     ------------------- CONTROL FLOW GRAPH ---------------------
+ *
+ *  Explicit, read-only view of the blocks of one SSAIR reachable from its head block. The four block pointers are turned
+ *  into edge lists: the successors of a block are its fallThruTo and branchTo, predecessors are derived from the
+ *  successor edges (the From pointers only remember the last parent linked, a join can have more).
+ *
+ *  NUMBERING:      blocks are numbered in reverse postorder, the head block is 0. All queries take and return these
+ *                  indices, index(block) maps back from a block (-1 if it is not reachable).
+ *
+ *  A view is a snapshot: it is stale as soon as a block link changes. SSAIR caches it and rebuilds it when the CFG shape
+ *  changed since.
+ *  */
+public class ControlFlowGraph
+{
+    private static final int[] NONE = new int[0];
+
+    private final BasicBlock[] blocks;          // in reverse postorder
+    private final int[][] successors;
+    private final int[][] predecessors;
+    private final int minBlockId;
+    private final int[] indexById;              // blockId - minBlockId -> index, -1 if unreachable
+
+    public ControlFlowGraph(BasicBlock entry) {
+        List<BasicBlock> postorder = postorder(entry);
+        int n = postorder.size();
+        blocks = new BasicBlock[n];
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            blocks[i] = postorder.get(n - 1 - i);
+            min = Math.min(min, blocks[i].getBlockId());
+            max = Math.max(max, blocks[i].getBlockId());
+        }
+        minBlockId = min;
+        indexById = new int[max - min + 1];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < n; i++) {
+            indexById[blocks[i].getBlockId() - min] = i;
+        }
+
+        successors = new int[n][];
+        int[] predecessorCount = new int[n];
+        for (int i = 0; i < n; i++) {
+            successors[i] = successorIndices(blocks[i]);
+            for (int s : successors[i]) {
+                predecessorCount[s]++;
+            }
+        }
+        predecessors = new int[n][];
+        for (int i = 0; i < n; i++) {
+            predecessors[i] = predecessorCount[i] == 0 ? NONE : new int[predecessorCount[i]];
+            predecessorCount[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int s : successors[i]) {
+                predecessors[s][predecessorCount[s]++] = i;
+            }
+        }
+    }
+
+    /** number of reachable blocks */
+    public int size() {
+        return blocks.length;
+    }
+
+    public BasicBlock block(int index) {
+        return blocks[index];
+    }
+
+    /** reverse postorder index of block, -1 if block is not reachable from the head block */
+    public int index(BasicBlock block) {
+        return indexOfBlockId(block.getBlockId());
+    }
+
+    /** reverse postorder index of the block with id blockId (e.g. Instruction.getBlockId()), -1 if it is not reachable */
+    public int indexOfBlockId(int blockId) {
+        int i = blockId - minBlockId;
+        return i >= 0 && i < indexById.length ? indexById[i] : -1;
+    }
+
+    /** successor indices of a block: fallThruTo first, then branchTo. Do not modify. */
+    public int[] successors(int index) {
+        return successors[index];
+    }
+
+    /** predecessor indices of a block, in increasing index order. Do not modify. */
+    public int[] predecessors(int index) {
+        return predecessors[index];
+    }
+
+    /** reachable blocks in reverse postorder */
+    public List<BasicBlock> blocks() {
+        return List.of(blocks);
+    }
+
+    private int[] successorIndices(BasicBlock block) {
+        BasicBlock fallThruTo = block.getFallThruTo(), branchTo = block.getBranchTo();
+        if (fallThruTo == null && branchTo == null) {
+            return NONE;
+        }
+        if (fallThruTo == null || branchTo == null || fallThruTo == branchTo) {
+            return new int[] { index(fallThruTo != null ? fallThruTo : branchTo) };
+        }
+        return new int[] { index(fallThruTo), index(branchTo) };
+    }
+
+    /** iterative depth first search, successors in fallThruTo, branchTo order */
+    private static List<BasicBlock> postorder(BasicBlock entry) {
+        List<BasicBlock> order = new ArrayList<>();
+        Set<BasicBlock> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<BasicBlock> stack = new ArrayList<>();
+        int[] nextSuccessor = new int[16];              // per stack entry: 0 fallThruTo, 1 branchTo, 2 done
+        stack.add(entry);
+        visited.add(entry);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            BasicBlock block = stack.get(top);
+            int k = nextSuccessor[top];
+            if (k == 2) {
+                order.add(block);
+                stack.remove(top);
+                continue;
+            }
+            nextSuccessor[top] = k + 1;
+            BasicBlock successor = k == 0 ? block.getFallThruTo() : block.getBranchTo();
+            if (successor != null && visited.add(successor)) {
+                if (stack.size() == nextSuccessor.length) {
+                    nextSuccessor = Arrays.copyOf(nextSuccessor, nextSuccessor.length * 2);
+                }
+                nextSuccessor[stack.size()] = 0;
+                stack.add(successor);
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,194 @@
+package IR.CFG;
+
+import IR.BasicBlock.BasicBlock;
+
+import java.util.Arrays;
+
+/** Dominator tree and dominance frontiers of a ControlFlowGraph, over its reverse postorder indices.
+ *
+ *  IMMEDIATE DOMINATORS:   Cooper, Harvey & Kennedy, "A Simple, Fast Dominance Algorithm": iterate over the blocks in
+ *                          reverse postorder, intersecting the dominators of the processed predecessors, until no idom
+ *                          changes. Plain int arrays, usually two passes.
+ *
+ *  DOMINANCE QUERIES:      the tree is numbered by a depth first walk, a dominates b iff b's preorder number lies in a's
+ *                          [pre, post] interval, so dominates() is O(1).
+ *
+ *  DOMINANCE FRONTIERS:    for every join (two or more predecessors), walk up from each predecessor to the join's idom.
+ *  */
+public class DominatorTree
+{
+    private static final int UNDEFINED = -1;
+
+    private final ControlFlowGraph cfg;
+    private final int[] idom;               // index -> index of its immediate dominator, the head block is its own
+    private final int[][] children;
+    private final int[] preorder;
+    private final int[] lastDescendant;     // largest preorder number in the subtree
+    private final int[][] frontiers;
+
+    public DominatorTree(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        int n = cfg.size();
+        idom = computeIdoms(cfg);
+        children = computeChildren(idom);
+        preorder = new int[n];
+        lastDescendant = new int[n];
+        number();
+        frontiers = computeFrontiers(cfg, idom);
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    /** index of the immediate dominator of block index, -1 for the head block */
+    public int immediateDominator(int index) {
+        return index == 0 ? -1 : idom[index];
+    }
+
+    /** immediate dominator of block, null for the head block or an unreachable block */
+    public BasicBlock immediateDominator(BasicBlock block) {
+        int index = cfg.index(block);
+        return index > 0 ? cfg.block(idom[index]) : null;
+    }
+
+    /** blocks immediately dominated by block index, in increasing index order. Do not modify. */
+    public int[] children(int index) {
+        return children[index];
+    }
+
+    /** true if a dominates b (every block dominates itself) */
+    public boolean dominates(int a, int b) {
+        return preorder[a] <= preorder[b] && preorder[b] <= lastDescendant[a];
+    }
+
+    /** true if a dominates b, false if either is unreachable */
+    public boolean dominates(BasicBlock a, BasicBlock b) {
+        int ia = cfg.index(a), ib = cfg.index(b);
+        return ia >= 0 && ib >= 0 && dominates(ia, ib);
+    }
+
+    /** dominance frontier of block index, in increasing index order. Do not modify. */
+    public int[] frontier(int index) {
+        return frontiers[index];
+    }
+
+    // ---------------------- CONSTRUCTION ------------------------ //
+
+    private static int[] computeIdoms(ControlFlowGraph cfg) {
+        int n = cfg.size();
+        int[] idom = new int[n];
+        Arrays.fill(idom, UNDEFINED);
+        if (n == 0) {
+            return idom;
+        }
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = 1; b < n; b++) {
+                int newIdom = UNDEFINED;
+                for (int p : cfg.predecessors(b)) {
+                    if (idom[p] != UNDEFINED) {
+                        newIdom = newIdom == UNDEFINED ? p : intersect(idom, p, newIdom);
+                    }
+                }
+                if (idom[b] != newIdom) {
+                    idom[b] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        return idom;
+    }
+
+    // with reverse postorder indices, a dominator always has a smaller index than the blocks it dominates
+    private static int intersect(int[] idom, int a, int b) {
+        while (a != b) {
+            while (a > b) {
+                a = idom[a];
+            }
+            while (b > a) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    private static int[][] computeChildren(int[] idom) {
+        int n = idom.length;
+        int[] count = new int[n];
+        for (int b = 1; b < n; b++) {
+            count[idom[b]]++;
+        }
+        int[][] children = new int[n][];
+        for (int b = 0; b < n; b++) {
+            children[b] = new int[count[b]];
+            count[b] = 0;
+        }
+        for (int b = 1; b < n; b++) {
+            children[idom[b]][count[idom[b]]++] = b;
+        }
+        return children;
+    }
+
+    /** preorder numbers and subtree ends of the dominator tree, iterative walk from the head block */
+    private void number() {
+        int n = idom.length;
+        if (n == 0) {
+            return;
+        }
+        int[] stack = new int[n];
+        int[] nextChild = new int[n];
+        int top = 0, counter = 0;
+        stack[0] = 0;
+        preorder[0] = counter++;
+        while (top >= 0) {
+            int b = stack[top];
+            if (nextChild[b] < children[b].length) {
+                int c = children[b][nextChild[b]++];
+                preorder[c] = counter++;
+                stack[++top] = c;
+            } else {
+                lastDescendant[b] = counter - 1;
+                top--;
+            }
+        }
+    }
+
+    private static int[][] computeFrontiers(ControlFlowGraph cfg, int[] idom) {
+        int n = cfg.size();
+        int[][] frontiers = new int[n][];
+        int[] size = new int[n];
+        int[] lastAdded = new int[n];           // join last added to a frontier, avoids duplicates
+        Arrays.fill(lastAdded, UNDEFINED);
+        for (int b = 0; b < n; b++) {
+            frontiers[b] = new int[0];
+        }
+        for (int join = 0; join < n; join++) {
+            int[] predecessors = cfg.predecessors(join);
+            if (predecessors.length < 2) {
+                continue;
+            }
+            for (int p : predecessors) {
+                for (int runner = p; runner != idom[join]; runner = idom[runner]) {
+                    if (lastAdded[runner] == join) {
+                        break;
+                    }
+                    if (size[runner] == frontiers[runner].length) {
+                        frontiers[runner] = Arrays.copyOf(frontiers[runner], Math.max(2, size[runner] * 2));
+                    }
+                    frontiers[runner][size[runner]++] = join;
+                    lastAdded[runner] = join;
+                    if (runner == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        for (int b = 0; b < n; b++) {
+            frontiers[b] = Arrays.copyOf(frontiers[b], size[b]);
+        }
+        return frontiers;
+    }
+}
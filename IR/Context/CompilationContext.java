@@ -0,0 +1,172 @@
+package IR.Context;
+
+import IR.BasicBlock.BasicBlock;
+import IR.Instruction.Instruction;
+import IR.Search.DefinitionCache;
+import trace.Tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**                     ------------------- COMPILATION CONTEXT ---------------------
+ *
+ *  owns all state of a single compile, so compiles never share anything and can run concurrently in one JVM.
+ *  One context per compile, a context is not thread-safe and must not be shared between compiles.
+ *
+ *  INSTRUCTION STORE: every instruction is registered here when constructed, its id is its row in the store
+ *                     (InstructionStore, struct of arrays). Instructions are therefore listed in generated order
+ *                     (row 0 unused). The store's slack is trimmed once the IR is complete.
+ *
+ *  BLOCK REGISTRY:    every basic block of every function, in generated order. Used for CFG printing. Blocks removed
+ *                     by optimization (unreachable) leave the registry, their ids are not handed out again.
+ *
+ *  DEFINITION CLOCK:  logical time shared by the variable-lookup memos of all blocks (DefinitionCache.Clock).
+ *
+ *  ARG REGISTERS:     counter for the argument registers handed out to function parameters.
+ *
+ *  OUTPUT:            where this compile prints its CFG and diagnostics. Diagnostics are also kept as a list, so a
+ *                     driver can collect them without parsing the output.
+ *
+ *  FORK / JOIN:       a function body can be built on another thread in a context forked from this one (own instruction
+ *                     ids, block ids and buffered output). join() appends it to this context, renumbering its ids, so
+ *                     joining forks in declaration order gives the same ids as building everything on one thread.
+ *
+ *  close() drops the instruction store and block registry once the compile is finished.
+ *  */
+public class CompilationContext implements AutoCloseable
+{
+    private final InstructionStore instructions = new InstructionStore();
+    private final ArrayList<BasicBlock> blocks = new ArrayList<>();
+    private int blockIds = 0;                       // block ids handed out, removed blocks keep theirs
+    private final DefinitionCache.Clock definitionClock = new DefinitionCache.Clock();
+    private int argRegisters = 0;
+    private final Tracer tracer;
+    private final PrintStream out;
+    private final List<String> diagnostics = new ArrayList<>();
+    private ByteArrayOutputStream forkedOutput;     // buffered output of a forked context, null otherwise
+
+    public CompilationContext() {
+        this(Tracer.off());
+    }
+
+    public CompilationContext(Tracer tracer) {
+        this(tracer, System.out);
+    }
+
+    public CompilationContext(Tracer tracer, PrintStream out) {
+        this.tracer = tracer;
+        this.out = out;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    // ---------------------- DIAGNOSTICS ------------------------ //
+
+    /** prints a diagnostic (error/warning line) to this compile's output and keeps it */
+    public void reportDiagnostic(String diagnostic) {
+        diagnostics.add(diagnostic);
+        out.println(diagnostic);
+    }
+
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    // ---------------------- INSTRUCTION STORE ------------------------ //
+
+    public InstructionStore getInstructionStore() {
+        return instructions;
+    }
+
+    /** un-registers the most recently constructed instruction, its id is handed out again. Used when a freshly built
+     *  instruction turns out to be an exact common subexpression and is thrown away. */
+    public void discardLastInstruction() {
+        instructions.removeLast();
+    }
+
+    public Instruction getInstruction(int id) {
+        return instructions.instruction(id);
+    }
+
+    /** drops the slack of the instruction store's columns, once the IR is complete */
+    public void trimInstructionStore() {
+        instructions.trimToSize();
+    }
+
+    /** one past the largest instruction id handed out so far */
+    public int instructionIdLimit() {
+        return instructions.limit();
+    }
+
+    // ---------------------- BLOCK REGISTRY ------------------------ //
+
+    /** registers a newly constructed block and returns its id */
+    public int registerBlock(BasicBlock block) {
+        blocks.add(block);
+        return ++blockIds;
+    }
+
+    /** drops removed blocks (unreachable after optimization) from the registry */
+    public void removeBlocks(Collection<BasicBlock> removed) {
+        blocks.removeAll(removed);
+    }
+
+    public List<BasicBlock> getAllBlocks() {
+        return blocks;
+    }
+
+    public DefinitionCache.Clock getDefinitionClock() {
+        return definitionClock;
+    }
+
+    // ---------------------- REGISTERS ------------------------ //
+
+    public int nextArgRegister() {
+        return ++argRegisters;
+    }
+
+    // ---------------------- FORK / JOIN ------------------------ //
+
+    /** a context for building one function on another thread. Its output is buffered until join(). Argument registers
+     *  continue from argRegisterBase, the number of registers handed out before this function in declaration order. */
+    public CompilationContext fork(int argRegisterBase) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CompilationContext forked = new CompilationContext(tracer, new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        forked.forkedOutput = buffer;
+        forked.argRegisters = argRegisterBase;
+        return forked;
+    }
+
+    /** appends a forked context's instructions, blocks, diagnostics and output to this one. Ids of the forked context
+     *  are shifted to continue after this context's, as if they had been generated here. */
+    public void join(CompilationContext forked) {
+        int blockOffset = blockIds;
+        instructions.append(forked.instructions, blockOffset);
+        for (BasicBlock block : forked.blocks) {
+            block.renumber(blockOffset);
+            blocks.add(block);
+        }
+        blockIds += forked.blockIds;
+        argRegisters = Math.max(argRegisters, forked.argRegisters);
+        diagnostics.addAll(forked.diagnostics);
+        out.print(forked.forkedOutput.toString(StandardCharsets.UTF_8));
+        forked.close();
+    }
+
+    /** releases the IR built by this compile */
+    @Override
+    public void close() {
+        instructions.clear();
+        blocks.clear();
+    }
+}
@@ -0,0 +1,302 @@
+package IR.Context;
+
+import IR.Instruction.Instruction;
+
+import java.util.Arrays;
+
+/** Struct-of-arrays storage of the instructions of one compile. Everything about an instruction lives in parallel
+ *  primitive arrays indexed by instruction id: its fields, its links in the block's InstructionList and its use list. An
+ *  Instruction object is only a handle (id and store) whose accessors read and write these columns. A walk over
+ *  opcodes, operands or eliminated flags of the whole IR is a scan over a few int arrays, no instruction object is
+ *  touched.
+ *
+ *  COLUMNS:    opcode          Op ordinal
+ *              operand1/2      instruction ids of the operands (unary op and MJU argument in operand1), 0 for none
+ *              reference1/2    identifier ids the operands were read from, Instruction.NO_REFERENCE for none
+ *              eliminatedBy    id of the common subexpression eliminating the instruction, 0 if active
+ *              immediate       constant value, register id or function id
+ *              block           id of the block holding the instruction, 0 while it is in none
+ *              prev/next       ids of the neighbours in the block's InstructionList, 0 at either end
+ *              firstUse        head of the instruction's use list, 0 if it has no users
+ *
+ *  USE LISTS:  every operand slot is a use, numbered use(id, slot) = 2 * id + slot (slot 0 is operand1, 1 is operand2).
+ *              The uses of an instruction are chained through the nextUse/prevUse columns, indexed by use, so adding or
+ *              removing one is O(1) and a use list costs no object.
+ *
+ *  Ids start at 1, slot 0 is never used, so 0 is the "none" value of every id and use column.
+ *  Columns grow by doubling while the IR is built, trimToSize() drops the slack once it is complete.
+ *  clear() drops all columns at once when the compile is finished.
+ *  */
+public class InstructionStore
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Instruction[] handles;
+    private byte[] opcode;
+    private int[] operand1;
+    private int[] operand2;
+    private int[] reference1;
+    private int[] reference2;
+    private int[] eliminatedBy;
+    private int[] immediate;
+    private int[] block;
+    private int[] prev;
+    private int[] next;
+    private int[] firstUse;
+    private int[] nextUse;                      // indexed by use, twice the length of the other columns
+    private int[] prevUse;
+    private int limit;                          // one past the largest id
+
+    public InstructionStore() {
+        clear();
+    }
+
+    /** adds a row for handle and returns its id, every other column starts out as 0 */
+    public int add(Instruction handle, Instruction.Op op) {
+        if (limit == handles.length) {
+            resize(limit * 2);
+        }
+        handles[limit] = handle;
+        opcode[limit] = (byte) op.ordinal();
+        return limit++;
+    }
+
+    /** removes the row of the largest id, the id is handed out again */
+    public void removeLast() {
+        limit--;
+        clearRow(limit);
+    }
+
+    /** one past the largest id */
+    public int limit() {
+        return limit;
+    }
+
+    /** the handle of row id, null for id 0 */
+    public Instruction instruction(int id) {
+        return handles[id];
+    }
+
+    /** use number of operand slot (0 or 1) of instruction id */
+    public static int use(int id, int slot) {
+        return 2 * id + slot;
+    }
+
+    /** instruction id a use belongs to */
+    public static int user(int use) {
+        return use >> 1;
+    }
+
+    // ---------------------- COLUMNS ------------------------ //
+
+    public byte opcode(int id) {
+        return opcode[id];
+    }
+
+    public void setOpcode(int id, Instruction.Op op) {
+        opcode[id] = (byte) op.ordinal();
+    }
+
+    public int operand1(int id) {
+        return operand1[id];
+    }
+
+    public void setOperand1(int id, int operand) {
+        operand1[id] = operand;
+    }
+
+    public int operand2(int id) {
+        return operand2[id];
+    }
+
+    public void setOperand2(int id, int operand) {
+        operand2[id] = operand;
+    }
+
+    public int reference1(int id) {
+        return reference1[id];
+    }
+
+    public void setReference1(int id, int reference) {
+        reference1[id] = reference;
+    }
+
+    public int reference2(int id) {
+        return reference2[id];
+    }
+
+    public void setReference2(int id, int reference) {
+        reference2[id] = reference;
+    }
+
+    public int eliminatedBy(int id) {
+        return eliminatedBy[id];
+    }
+
+    public void setEliminatedBy(int id, int eliminator) {
+        eliminatedBy[id] = eliminator;
+    }
+
+    public int immediate(int id) {
+        return immediate[id];
+    }
+
+    public void setImmediate(int id, int value) {
+        immediate[id] = value;
+    }
+
+    public int block(int id) {
+        return block[id];
+    }
+
+    public void setBlock(int id, int blockId) {
+        block[id] = blockId;
+    }
+
+    public int prev(int id) {
+        return prev[id];
+    }
+
+    public void setPrev(int id, int prevId) {
+        prev[id] = prevId;
+    }
+
+    public int next(int id) {
+        return next[id];
+    }
+
+    public void setNext(int id, int nextId) {
+        next[id] = nextId;
+    }
+
+    // ---------------------- USE LISTS ------------------------ //
+
+    /** first use of instruction id, 0 if it has no users */
+    public int firstUse(int id) {
+        return firstUse[id];
+    }
+
+    /** use after use in its instruction's use list, 0 at the end */
+    public int nextUse(int use) {
+        return nextUse[use];
+    }
+
+    /** adds use to the use list of instruction id */
+    public void addUse(int id, int use) {
+        int head = firstUse[id];
+        nextUse[use] = head;
+        prevUse[use] = 0;
+        if (head != 0) {
+            prevUse[head] = use;
+        }
+        firstUse[id] = use;
+    }
+
+    /** removes use from the use list of instruction id, nothing happens if it is not in the list (already dropped) */
+    public void removeUse(int id, int use) {
+        int before = prevUse[use], after = nextUse[use];
+        if (before == 0 && firstUse[id] != use) {
+            return;
+        }
+        if (before == 0) {
+            firstUse[id] = after;
+        } else {
+            nextUse[before] = after;
+        }
+        if (after != 0) {
+            prevUse[after] = before;
+        }
+        nextUse[use] = prevUse[use] = 0;
+    }
+
+    // ---------------------- FORK / JOIN ------------------------ //
+
+    /** appends every row of other after this store's rows. Ids in other are shifted to continue after this store's,
+     *  block ids by blockOffset, and other's handles are rebound to this store. */
+    public void append(InstructionStore other, int blockOffset) {
+        int offset = limit - 1;
+        if (limit + other.limit > handles.length) {
+            resize(Math.max(handles.length * 2, limit + other.limit));
+        }
+        int useOffset = use(offset, 0);
+        for (int i = 1; i < other.limit; i++) {
+            int id = i + offset;
+            handles[id] = other.handles[i];
+            opcode[id] = other.opcode[i];
+            operand1[id] = shift(other.operand1[i], offset);
+            operand2[id] = shift(other.operand2[i], offset);
+            reference1[id] = other.reference1[i];
+            reference2[id] = other.reference2[i];
+            eliminatedBy[id] = shift(other.eliminatedBy[i], offset);
+            immediate[id] = other.immediate[i];
+            block[id] = shift(other.block[i], blockOffset);
+            prev[id] = shift(other.prev[i], offset);
+            next[id] = shift(other.next[i], offset);
+            firstUse[id] = shift(other.firstUse[i], useOffset);
+            for (int slot = 0; slot < 2; slot++) {
+                nextUse[use(id, slot)] = shift(other.nextUse[use(i, slot)], useOffset);
+                prevUse[use(id, slot)] = shift(other.prevUse[use(i, slot)], useOffset);
+            }
+            handles[id].rebind(this, id);
+        }
+        limit += other.limit - 1;
+    }
+
+    /** shrinks every column to the rows in use, for an IR that is complete. Adding a row afterwards grows them again */
+    public void trimToSize() {
+        if (limit < handles.length) {
+            resize(limit);
+        }
+    }
+
+    /** drops all rows */
+    public void clear() {
+        handles = new Instruction[INITIAL_CAPACITY];
+        opcode = new byte[INITIAL_CAPACITY];
+        operand1 = new int[INITIAL_CAPACITY];
+        operand2 = new int[INITIAL_CAPACITY];
+        reference1 = new int[INITIAL_CAPACITY];
+        reference2 = new int[INITIAL_CAPACITY];
+        eliminatedBy = new int[INITIAL_CAPACITY];
+        immediate = new int[INITIAL_CAPACITY];
+        block = new int[INITIAL_CAPACITY];
+        prev = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        firstUse = new int[INITIAL_CAPACITY];
+        nextUse = new int[2 * INITIAL_CAPACITY];
+        prevUse = new int[2 * INITIAL_CAPACITY];
+        limit = 1;
+    }
+
+    // 0 is "none" in every id and use column and stays 0
+    private static int shift(int id, int offset) {
+        return id != 0 ? id + offset : 0;
+    }
+
+    private void clearRow(int id) {
+        handles[id] = null;
+        opcode[id] = 0;
+        operand1[id] = operand2[id] = 0;
+        reference1[id] = reference2[id] = 0;
+        eliminatedBy[id] = immediate[id] = block[id] = 0;
+        prev[id] = next[id] = firstUse[id] = 0;
+        nextUse[use(id, 0)] = nextUse[use(id, 1)] = prevUse[use(id, 0)] = prevUse[use(id, 1)] = 0;
+    }
+
+    private void resize(int capacity) {
+        handles = Arrays.copyOf(handles, capacity);
+        opcode = Arrays.copyOf(opcode, capacity);
+        operand1 = Arrays.copyOf(operand1, capacity);
+        operand2 = Arrays.copyOf(operand2, capacity);
+        reference1 = Arrays.copyOf(reference1, capacity);
+        reference2 = Arrays.copyOf(reference2, capacity);
+        eliminatedBy = Arrays.copyOf(eliminatedBy, capacity);
+        immediate = Arrays.copyOf(immediate, capacity);
+        block = Arrays.copyOf(block, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+        firstUse = Arrays.copyOf(firstUse, capacity);
+        nextUse = Arrays.copyOf(nextUse, 2 * capacity);
+        prevUse = Arrays.copyOf(prevUse, 2 * capacity);
+    }
+}
@@ -18,6 +18,21 @@ public class Function {
         this.cfg = cfg;
     }
 
+    /** a declared function whose body has not been built (or is being built elsewhere), only its signature is known */
+    public static Function header(int functionId, boolean isVoid) {
+        Function f = new Function(null);
+        f.setFunctionId(functionId);
+        if (isVoid) {
+            f.setIsVoid();
+        }
+        return f;
+    }
+
+    /** the function body, null for a header */
+    public SSAIR getSSAIR() {
+        return cfg;
+    }
+
     public int getFunctionId() {
         return functionId;
     }
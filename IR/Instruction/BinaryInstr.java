@@ -1,88 +1,149 @@
 package IR.Instruction;
 
-import java.util.Objects;
+import IR.Context.CompilationContext;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class BinaryInstr extends Instruction
 {
-    private Instruction op1;
-    private Instruction op2;
-    private Integer op1IdReference;
-    private Integer op2IdReference;
-
-    public BinaryInstr(Op opType, Instruction op1, Instruction op2) {
-        super(opType);
-        this.op1 = op1;
-        this.op2 = op2;
+    public BinaryInstr(CompilationContext context, Op opType, Instruction op1, Instruction op2) {
+        super(context, opType);
+        store.setOperand1(getId(), idOf(op1));
+        store.setOperand2(getId(), idOf(op2));
+        updateUse(SLOT1, null, op1);
+        updateUse(SLOT2, null, op2);
     }
 
     public Instruction getOp1() {
-        return op1;
+        return store.instruction(getOp1Id());
+    }
+
+    /** id of op1, 0 if op1 is null */
+    public int getOp1Id() {
+        return store.operand1(getId());
     }
 
     public void setOp1(Instruction op1) {
-        this.op1 = op1;
+        updateUse(SLOT1, getOp1(), op1);
+        store.setOperand1(getId(), idOf(op1));
     }
 
     public Instruction getOp2() {
-        return op2;
+        return store.instruction(getOp2Id());
+    }
+
+    /** id of op2, 0 if op2 is null */
+    public int getOp2Id() {
+        return store.operand2(getId());
     }
 
     public void setOp2(Instruction op2) {
-        this.op2 = op2;
+        updateUse(SLOT2, getOp2(), op2);
+        store.setOperand2(getId(), idOf(op2));
     }
 
-    public void setOpIdReferences(Integer op1, Integer op2) {
-        op1IdReference = op1;
-        op2IdReference = op2;
+    /** identifier ids the operands were read from, NO_REFERENCE for an operand that is not a variable reference */
+    public void setOpIdReferences(int op1, int op2) {
+        store.setReference1(getId(), op1);
+        store.setReference2(getId(), op2);
     }
 
-    public Integer getOp1IdReference() {
-        return op1IdReference;
+    public int getOp1IdReference() {
+        return store.reference1(getId());
     }
 
-    public Integer getOp2IdReference() {
-        return op2IdReference;
+    public int getOp2IdReference() {
+        return store.reference2(getId());
     }
 
     /** checks if operand value and references match, returns true if replacement happened. */
     public boolean replaceOperands(int identId, Instruction oldValue, Instruction newValue) {
-        if (op1.getId() == oldValue.getId() && op1IdReference != null && op1IdReference == identId) {
-            op1 = newValue;
+        int op1IdReference = getOp1IdReference(), op2IdReference = getOp2IdReference();
+        if (getOp1() == oldValue && op1IdReference != NO_REFERENCE && op1IdReference == identId) {
+            setOp1(newValue);
             return true;
         }
-        if (op2.getId() == oldValue.getId() && op2IdReference != null && op2IdReference == identId) {
-            op2 = newValue;
+        if (getOp2() == oldValue && op2IdReference != NO_REFERENCE && op2IdReference == identId) {
+            setOp2(newValue);
             return true;
         }
         return false;
     }
 
+    @Override
+    public void replaceUsesOf(Instruction oldValue, Instruction newValue) {
+        if (getOp1() == oldValue) {
+            setOp1(newValue);
+        }
+        if (getOp2() == oldValue) {
+            setOp2(newValue);
+        }
+    }
+
+    @Override
+    public void dropOperandUses() {
+        updateUse(SLOT1, getOp1(), null);
+        updateUse(SLOT2, getOp2(), null);
+    }
+
+    @Override
+    public List<Instruction> getOperands() {
+        List<Instruction> operands = new ArrayList<>(2);
+        if (getOp1Id() != 0) {
+            operands.add(getOp1());
+        }
+        if (getOp2Id() != 0) {
+            operands.add(getOp2());
+        }
+        return operands;
+    }
+
+    /** same operands, in either order for a commutative op */
     public boolean sameOperandIds(BinaryInstr other) {
-        return op1.getId() == other.op1.getId() && op2.getId() == other.op2.getId();
+        return sameOperandIdsInOrder(other) || isCommutative() && sameOperandIdsSwapped(other);
     }
 
+    /** same operands and operand references, in either order for a commutative op */
     public boolean sameOperandIdAndRefs(BinaryInstr other) {
-        return sameOperandIds(other) && Objects.equals(op1IdReference, other.op1IdReference) &&
-                Objects.equals(op2IdReference, other.op2IdReference);
+        int ref1 = getOp1IdReference(), ref2 = getOp2IdReference();
+        if (sameOperandIdsInOrder(other) && ref1 == other.getOp1IdReference() && ref2 == other.getOp2IdReference()) {
+            return true;
+        }
+        return isCommutative() && sameOperandIdsSwapped(other) && ref1 == other.getOp2IdReference() &&
+                ref2 == other.getOp1IdReference();
+    }
+
+    private boolean sameOperandIdsInOrder(BinaryInstr other) {
+        return getOp1Id() == other.getOp1Id() && getOp2Id() == other.getOp2Id();
+    }
+
+    private boolean sameOperandIdsSwapped(BinaryInstr other) {
+        return getOp1Id() == other.getOp2Id() && getOp2Id() == other.getOp1Id();
     }
 
     public boolean hasNullOperands() {
-        return op1 == null || op2 == null;
+        return getOp1Id() == 0 || getOp2Id() == 0;
     }
 
     @Override
     public String toString() {
-        if (op1 == null) {
-            return String.format("%s null (%d)", super.toString(), op2.getId());
+        int op1 = getOp1Id(), op2 = getOp2Id();
+        if (op1 == 0) {
+            return String.format("%s null (%d)", super.toString(), op2);
         }
-        else if (op2 == null) {
-            return String.format("%s (%d) null", super.toString(), op1.getId());
+        else if (op2 == 0) {
+            return String.format("%s (%d) null", super.toString(), op1);
         }
         else if (getOpType() == Op.PHI) {
-            return String.format("%s.%d (%d) (%d)", super.toString(), op1IdReference, op1.getId(), op2.getId());
+            return String.format("%s.%s (%d) (%d)", super.toString(), referenceString(getOp1IdReference()), op1, op2);
         }
         else {
-            return String.format("%s (%d) (%d)", super.toString(), op1.getId(), op2.getId());
+            return String.format("%s (%d) (%d)", super.toString(), op1, op2);
         }
     }
+
+    private static String referenceString(int idReference) {
+        return idReference != NO_REFERENCE ? Integer.toString(idReference) : "null";
+    }
 }
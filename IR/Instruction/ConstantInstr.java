@@ -1,19 +1,19 @@
 package IR.Instruction;
 
-public class ConstantInstr extends Instruction {
+import IR.Context.CompilationContext;
 
-    private final int value;
+public class ConstantInstr extends Instruction {
 
-    public ConstantInstr(int value) {
-        super(Op.CONST);
-        this.value = value;
+    public ConstantInstr(CompilationContext context, int value) {
+        super(context, Op.CONST);
+        store.setImmediate(getId(), value);
     }
 
     public int getValue() {
-        return value;
+        return store.immediate(getId());
     }
 
     public String toString() {
-        return String.format("%s #%d", super.toString(), value);
+        return String.format("%s #%d", super.toString(), getValue());
     }
 }
@@ -1,19 +1,21 @@
 package IR.Instruction;
 
-import java.util.ArrayList;
-import java.util.List;
+import IR.Context.CompilationContext;
 
 public class FunctionCall extends Instruction
 {
-    private Integer functionId;
-    private String fname;
+    private final String fname;
 
-    public FunctionCall(int id, String fname) {
-        super(Op.CALL);
-        this.functionId = id;
+    public FunctionCall(CompilationContext context, int id, String fname) {
+        super(context, Op.CALL);
+        store.setImmediate(getId(), id);       // function id
         this.fname = fname;
     }
 
+    public int getFunctionId() {
+        return store.immediate(getId());
+    }
+
     public String toString() {
         return String.format("%s %s", super.toString(), fname);
     }
@@ -1,12 +1,28 @@
 package IR.Instruction;
 
+import IR.Context.CompilationContext;
+import IR.Context.InstructionStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** An instruction is a handle on one row of its compile's InstructionStore: opcode, operands, operand references,
+ *  eliminatedBy, immediates, the links in the block's InstructionList and the use list all live in the store's columns,
+ *  the handle only keeps its id and its store. */
 public class Instruction
 {
-    public static int idCounter = 1;
+    /** operand reference of an operand that is not a variable reference. Identifier ids start at 1 */
+    public static final int NO_REFERENCE = 0;
+    /** eliminatedBy of an active instruction. Instruction ids start at 1 */
+    private static final int NOT_ELIMINATED = 0;
+    private static final Op[] OPS = Op.values();
 
-    private final int id;
-    private final Op opType;
-    private Integer eliminatedBy;
+    /** operand slots, numbering the uses of an instruction's operands (see InstructionStore) */
+    static final int SLOT1 = 0, SLOT2 = 1;
+
+    private int id;                                 // row in store
+    InstructionStore store;
 
     public enum Op {
         CONST, NEG,
@@ -19,59 +35,205 @@ public class Instruction
         REG, RET
     }
 
-    public Instruction(Op opType) {
-        this.opType = opType;
-        this.id = Instruction.idCounter++;
+    /** instruction ids are handed out by the compile's context, in generated order */
+    public Instruction(CompilationContext context, Op opType) {
+        this.store = context.getInstructionStore();
+        this.id = store.add(this, opType);
+    }
+
+    /** id of operand, 0 for a null operand */
+    static int idOf(Instruction operand) {
+        return operand != null ? operand.id : 0;
+    }
+
+    // ---------------------- DEF-USE CHAINS ------------------------ //
+
+    /** instructions that use this one as an operand, once per operand slot, in the order the uses were made. A new
+     *  list is built from the store's use list on every call. */
+    public List<Instruction> getUsers() {
+        int use = store.firstUse(id);
+        if (use == 0) {
+            return Collections.emptyList();
+        }
+        ArrayList<Instruction> users = new ArrayList<>();
+        for (; use != 0; use = store.nextUse(use)) {
+            users.add(store.instruction(InstructionStore.user(use)));
+        }
+        Collections.reverse(users);                 // uses are added at the head of the list
+        return users;
+    }
+
+    /** called by operand setters of subclasses: moves the use of this instruction's operand slot from oldOperand to
+     *  newOperand, either may be null */
+    protected void updateUse(int slot, Instruction oldOperand, Instruction newOperand) {
+        int use = InstructionStore.use(id, slot);
+        if (oldOperand != null) {
+            store.removeUse(oldOperand.id, use);
+        }
+        if (newOperand != null) {
+            store.addUse(newOperand.id, use);
+        }
+    }
+
+    /** replaces every operand slot of this instruction that refers to oldValue with newValue. Instructions without
+     *  operands have nothing to replace. */
+    public void replaceUsesOf(Instruction oldValue, Instruction newValue) {
+    }
+
+    /** rewrites every user of this instruction to use newValue instead, touching only the actual users */
+    public void replaceAllUsesWith(Instruction newValue) {
+        for (Instruction user : getUsers()) {
+            user.replaceUsesOf(this, newValue);
+        }
+    }
+
+    /** like replaceAllUsesWith, but only for users that read this instruction's value. Branches to this instruction (it
+     *  is the first of its block) keep it as their target. */
+    public void replaceValueUsesWith(Instruction newValue) {
+        for (Instruction user : getUsers()) {
+            if (!user.isBranch()) {
+                user.replaceUsesOf(this, newValue);
+            }
+        }
+    }
+
+    /** removes this instruction from its operands' use lists, for an instruction that is thrown away after being
+     *  built */
+    public void dropOperandUses() {
+    }
+
+    /** the instructions this one reads, null operands left out. The operand of a branch is its target. */
+    public List<Instruction> getOperands() {
+        return Collections.emptyList();
     }
 
     /** returns true if instruction is eliminated and should not be considered for codegen */
     public boolean isEliminated() {
-        return this.eliminatedBy != null;
+        return store.eliminatedBy(id) != NOT_ELIMINATED;
     }
 
     /** eliminates this instruction */
-    public void setEliminatedBy(Integer i) {
-        this.eliminatedBy = i;
+    public void setEliminatedBy(int i) {
+        store.setEliminatedBy(id, i);
     }
 
     /** returns id of the common subexpression that eliminated this instruction */
-    public Integer getEliminatedBy() {
-        return eliminatedBy;
+    public int getEliminatedBy() {
+        return store.eliminatedBy(id);
+    }
+
+    /** the common subexpression that eliminated this instruction, null if it is active */
+    public Instruction getEliminator() {
+        int eliminatedBy = store.eliminatedBy(id);
+        return eliminatedBy != NOT_ELIMINATED ? store.instruction(eliminatedBy) : null;
     }
 
     /** re-activates this instruction */
     public void activate() {
-        this.eliminatedBy = null;
+        store.setEliminatedBy(id, NOT_ELIMINATED);
+    }
+
+    /** previous instruction in the same block, null at the head */
+    public Instruction getPrev() {
+        return store.instruction(store.prev(id));
+    }
+
+    /** next instruction in the same block, null at the tail */
+    public Instruction getNext() {
+        return store.instruction(store.next(id));
+    }
+
+    // links of the InstructionList (block) holding this instruction
+    void setPrev(Instruction prev) {
+        store.setPrev(id, idOf(prev));
+    }
+
+    void setNext(Instruction next) {
+        store.setNext(id, idOf(next));
     }
 
     public Op getOpType() {
-        return opType;
+        return OPS[store.opcode(id)];
     }
 
     public int getId() {
         return id;
     }
 
+    /** id of the block holding this instruction, 0 while it is in none */
+    public int getBlockId() {
+        return store.block(id);
+    }
+
+    public void setBlockId(int blockId) {
+        store.setBlock(id, blockId);
+    }
+
+    /** moves this handle to row id of store. Only used when a CompilationContext joins a forked context, the store
+     *  has already copied the row. */
+    public void rebind(InstructionStore store, int id) {
+        this.store = store;
+        this.id = id;
+    }
+
     public boolean isBinary() {
+        Op opType = getOpType();
         return isAddSubDivMul() || opType == Op.CMP || opType == Op.STORE || opType == Op.PHI;
     }
 
     public boolean isUnary() {
+        Op opType = getOpType();
         return opType == Op.NEG || opType == Op.LOAD || opType == Op.BRA || opType == Op.BNE ||
                 opType == Op.BEQ || opType == Op.BLE || opType == Op.BLT || opType == Op.BGE ||
                 opType == Op.BGT || opType == Op.WRITE || opType == Op.RET;
     }
 
+    /** BRA or a conditional branch, the operand is the first instruction of the target block */
+    public boolean isBranch() {
+        Op opType = getOpType();
+        return opType == Op.BRA || isConditionalBranch();
+    }
+
+    /** branch taken on the result of the CMP before it */
+    public boolean isConditionalBranch() {
+        Op opType = getOpType();
+        return opType == Op.BNE || opType == Op.BEQ || opType == Op.BLE || opType == Op.BLT ||
+                opType == Op.BGE || opType == Op.BGT;
+    }
+
+    /** the CMP a conditional branch consumes: the closest one before it in its block, null if there is none */
+    public Instruction getCondition() {
+        for (Instruction instr = getPrev(); instr != null; instr = instr.getPrev()) {
+            if (instr.getOpType() == Op.CMP) {
+                return instr;
+            }
+        }
+        return null;
+    }
+
     public boolean isAddSubDivMul() {
+        Op opType = getOpType();
         return opType == Op.ADD || opType == Op.SUB || opType == Op.MUL || opType == Op.DIV;
     }
 
+    /** a op b == b op a */
+    public boolean isCommutative() {
+        Op opType = getOpType();
+        return opType == Op.ADD || opType == Op.MUL;
+    }
+
+    /** value computed only from its operands and consumed through operand references, candidate for CSE. CMP is pure
+     *  too, but its result is consumed implicitly by the branch right after it, so a CMP is never replaced. */
+    public boolean isPureValue() {
+        return isAddSubDivMul() || getOpType() == Op.NEG;
+    }
+
     public String toString() {
         if (isEliminated()) {
-            return String.format("[eliminated by (%d)] %d: %s", eliminatedBy, id, opType.toString());
+            return String.format("[eliminated by (%d)] %d: %s", getEliminatedBy(), id, getOpType().toString());
         }
         else {
-            return String.format(" %d: %s", id, opType.toString());
+            return String.format(" %d: %s", id, getOpType().toString());
         }
     }
 }
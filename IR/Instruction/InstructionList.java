@@ -0,0 +1,151 @@
+package IR.Instruction;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** The instruction list of a basic block. Intrusive doubly linked list: the prev/next links live in the prev/next
+ *  columns of the InstructionStore, so there is no node allocation per instruction and insert/remove next to a known
+ *  instruction is O(1).
+ *  An instruction is in at most one list at a time.
+ *
+ *  PHI SEGMENT:    phis are kept together at the head of the list. addPhi() appends to the end of that segment in O(1),
+ *                  firstNonPhi() is O(1). Every insert keeps the segment intact: a phi can only go inside or right
+ *                  after the segment, any other instruction only after it, otherwise IllegalArgumentException.
+ *  */
+public class InstructionList implements Iterable<Instruction>
+{
+    private Instruction first;
+    private Instruction last;
+    private Instruction lastPhi;        // last instruction of the phi segment, null if there are no phis
+    private int size;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** throws NoSuchElementException if empty, like the java.util lists it replaces */
+    public Instruction getFirst() {
+        if (first == null) {
+            throw new NoSuchElementException();
+        }
+        return first;
+    }
+
+    public Instruction getLast() {
+        if (last == null) {
+            throw new NoSuchElementException();
+        }
+        return last;
+    }
+
+    /** first instruction after the phi segment, null if there is none */
+    public Instruction firstNonPhi() {
+        return lastPhi == null ? first : lastPhi.getNext();
+    }
+
+    public void addLast(Instruction i) {
+        insertAfter(last, i);
+    }
+
+    /** appends phi to the phi segment at the head of the list */
+    public void addPhi(Instruction phi) {
+        insertAfter(lastPhi, phi);
+    }
+
+    /** inserts i right after pos, at the head if pos is null */
+    public void insertAfter(Instruction pos, Instruction i) {
+        boolean posInPhiSegment = pos == null || isPhi(pos);
+        if (isPhi(i) ? !posInPhiSegment : lastPhi != null && posInPhiSegment && pos != lastPhi) {
+            throw new IllegalArgumentException("instruction " + i.getId() + " would break the phi segment");
+        }
+        if (isPhi(i) && pos == lastPhi) {
+            lastPhi = i;
+        }
+        Instruction after = pos == null ? first : pos.getNext();
+        i.setPrev(pos);
+        i.setNext(after);
+        if (pos == null) {
+            first = i;
+        } else {
+            pos.setNext(i);
+        }
+        if (after == null) {
+            last = i;
+        } else {
+            after.setPrev(i);
+        }
+        size++;
+    }
+
+    /** inserts i right before pos, at the tail if pos is null */
+    public void insertBefore(Instruction pos, Instruction i) {
+        insertAfter(pos == null ? last : pos.getPrev(), i);
+    }
+
+    private static boolean isPhi(Instruction i) {
+        return i.getOpType() == Instruction.Op.PHI;
+    }
+
+    public void remove(Instruction i) {
+        Instruction prev = i.getPrev(), next = i.getNext();
+        if (i == lastPhi) {
+            lastPhi = prev;
+        }
+        if (prev == null) {
+            first = next;
+        } else {
+            prev.setNext(next);
+        }
+        if (next == null) {
+            last = prev;
+        } else {
+            next.setPrev(prev);
+        }
+        i.setPrev(null);
+        i.setNext(null);
+        size--;
+    }
+
+    public Instruction removeFirst() {
+        Instruction head = getFirst();
+        remove(head);
+        return head;
+    }
+
+    /** iterates head to tail. The current instruction may be removed while iterating, through iterator.remove() */
+    @Override
+    public Iterator<Instruction> iterator() {
+        return new Iterator<>() {
+            private Instruction next = first;
+            private Instruction current;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Instruction next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = next.getNext();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                InstructionList.this.remove(current);
+                current = null;
+            }
+        };
+    }
+}
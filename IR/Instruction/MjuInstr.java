@@ -1,17 +1,48 @@
 package IR.Instruction;
 
+import IR.Context.CompilationContext;
+
+import java.util.Collections;
+import java.util.List;
+
+/** moves arg into register #R registerId. arg is kept in the operand1 column, registerId in the immediate column */
 public class MjuInstr extends Instruction {
 
-    Instruction arg;
-    Integer registerId;
+    public MjuInstr(CompilationContext context, Instruction arg, int registerId) {
+        super(context, Op.MJU);
+        store.setOperand1(getId(), idOf(arg));
+        store.setImmediate(getId(), registerId);
+        updateUse(SLOT1, null, arg);
+    }
+
+    public Instruction getArg() {
+        return store.instruction(store.operand1(getId()));
+    }
+
+    public int getRegisterId() {
+        return store.immediate(getId());
+    }
+
+    @Override
+    public void replaceUsesOf(Instruction oldValue, Instruction newValue) {
+        if (getArg() == oldValue) {
+            updateUse(SLOT1, oldValue, newValue);
+            store.setOperand1(getId(), idOf(newValue));
+        }
+    }
+
+    @Override
+    public void dropOperandUses() {
+        updateUse(SLOT1, getArg(), null);
+    }
 
-    public MjuInstr(Instruction arg, Integer registerId) {
-        super(Op.MJU);
-        this.arg = arg;
-        this.registerId = registerId;
+    @Override
+    public List<Instruction> getOperands() {
+        Instruction arg = getArg();
+        return arg != null ? List.of(arg) : Collections.emptyList();
     }
 
     public String toString() {
-        return String.format("%s (%d) #R%d", super.toString(), arg.getId(), registerId);
+        return String.format("%s (%d) #R%d", super.toString(), store.operand1(getId()), getRegisterId());
     }
 }
@@ -1,22 +1,21 @@
 package IR.Instruction;
 
+import IR.Context.CompilationContext;
+
 /** instruction used to represent a value stored in a particular register. Used only for argument saved registers.
  *  Used in function SSAIR to represent arguments as instruction values */
 public class RegisterInstr extends Instruction
 {
-    private static int argRgs = 0;
-    private final int regId;
-
-    public RegisterInstr() {
-        super(Op.REG);
-        this.regId = ++argRgs;
+    public RegisterInstr(CompilationContext context) {
+        super(context, Op.REG);
+        store.setImmediate(getId(), context.nextArgRegister());
     }
 
     public int getRegId() {
-        return regId;
+        return store.immediate(getId());
     }
 
     public String toString() {
-        return String.format("%s #R%d", super.toString(), regId);
+        return String.format("%s #R%d", super.toString(), getRegId());
     }
 }
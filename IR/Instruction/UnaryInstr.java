@@ -1,44 +1,87 @@
 package IR.Instruction;
 
+import IR.Context.CompilationContext;
+
+import java.util.Collections;
+import java.util.List;
+
 /** BNE, BEQ, BGT, BGE, BLT, BLE, BRA, WRITE */
 public class UnaryInstr extends Instruction
 {
-    private Instruction op;
-    private Integer opIdReference;
-
-    public UnaryInstr(Op opType, Instruction op) {
-        super(opType);
-        this.op = op;
+    public UnaryInstr(CompilationContext context, Op opType, Instruction op) {
+        super(context, opType);
+        store.setOperand1(getId(), idOf(op));
+        updateUse(SLOT1, null, op);
     }
 
-    public Integer getOpIdReference() {
-        return opIdReference;
+    public int getOpIdReference() {
+        return store.reference1(getId());
     }
 
-    public void setOpIdReference(Integer opIdReference) {
-        this.opIdReference = opIdReference;
+    public void setOpIdReference(int opIdReference) {
+        store.setReference1(getId(), opIdReference);
     }
 
     public Instruction getOp() {
-        return op;
+        return store.instruction(getOpId());
+    }
+
+    /** id of op, 0 if op is null */
+    public int getOpId() {
+        return store.operand1(getId());
     }
 
     public void setOp(Instruction op) {
-        this.op = op;
+        updateUse(SLOT1, getOp(), op);
+        store.setOperand1(getId(), idOf(op));
     }
 
-    public void replaceOperand(int identId, Instruction oldValue, Instruction newValue) {
+    /** checks if operand value and reference match, returns true if replacement happened. */
+    public boolean replaceOperand(int identId, Instruction oldValue, Instruction newValue) {
         // can take out op != null later?? depending on when in Parser I do the branch instr replacement
-        if (op!= null && op.getId() == oldValue.getId() && opIdReference != null && opIdReference == identId) {
-            op = newValue;
+        int opIdReference = getOpIdReference();
+        if (getOpId() != 0 && getOp() == oldValue && opIdReference != NO_REFERENCE && opIdReference == identId) {
+            setOp(newValue);
+            return true;
+        }
+        return false;
+    }
+
+    /** turns a conditional branch into a BRA to the same target, for a condition known to always hold */
+    public void makeUnconditional() {
+        store.setOpcode(getId(), Op.BRA);
+    }
+
+    public boolean sameOperandId(UnaryInstr other) {
+        return getOpId() != 0 && getOpId() == other.getOpId();
+    }
+
+    public boolean sameOperandIdAndRef(UnaryInstr other) {
+        return sameOperandId(other) && getOpIdReference() == other.getOpIdReference();
+    }
+
+    @Override
+    public void replaceUsesOf(Instruction oldValue, Instruction newValue) {
+        if (getOp() == oldValue) {
+            setOp(newValue);
         }
     }
 
+    @Override
+    public void dropOperandUses() {
+        updateUse(SLOT1, getOp(), null);
+    }
+
+    @Override
+    public List<Instruction> getOperands() {
+        return getOpId() != 0 ? List.of(getOp()) : Collections.emptyList();
+    }
+
     public String toString() {
-        if (op == null) {
+        if (getOpId() == 0) {
             return String.format("%s null", super.toString());
         } else {
-            return String.format("%s (%d)", super.toString(), op.getId());
+            return String.format("%s (%d)", super.toString(), getOpId());
         }
     }
 }
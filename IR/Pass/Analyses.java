@@ -0,0 +1,42 @@
+package IR.Pass;
+
+import IR.CFG.ControlFlowGraph;
+import IR.CFG.DominatorTree;
+import IR.SSAIR.SSAIR;
+
+/** the analyses shared by passes */
+public final class Analyses {
+
+    private Analyses() {
+    }
+
+    /** edge-list view of the blocks reachable from the head block */
+    public static final Analysis<ControlFlowGraph> CONTROL_FLOW_GRAPH = new Analysis<>() {
+        public String getName() {
+            return "cfg";
+        }
+
+        public ControlFlowGraph compute(SSAIR ir, AnalysisManager analyses) {
+            return new ControlFlowGraph(ir.getHeadBlock());
+        }
+
+        public Change invalidatedBy() {
+            return Change.CONTROL_FLOW;
+        }
+    };
+
+    /** dominator tree and dominance frontiers of CONTROL_FLOW_GRAPH */
+    public static final Analysis<DominatorTree> DOMINATOR_TREE = new Analysis<>() {
+        public String getName() {
+            return "dominators";
+        }
+
+        public DominatorTree compute(SSAIR ir, AnalysisManager analyses) {
+            return new DominatorTree(analyses.get(CONTROL_FLOW_GRAPH));
+        }
+
+        public Change invalidatedBy() {
+            return Change.CONTROL_FLOW;
+        }
+    };
+}
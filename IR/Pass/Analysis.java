@@ -0,0 +1,19 @@
+package IR.Pass;
+
+import IR.SSAIR.SSAIR;
+
+/** an analysis of one SSAIR whose result is cached by the AnalysisManager until a pass changes what it depends on.
+ *  Analyses are identified by instance, the shared ones are in Analyses. */
+public interface Analysis<T> {
+
+    String getName();
+
+    /** computes the result for ir, may ask analyses for the results it depends on */
+    T compute(SSAIR ir, AnalysisManager analyses);
+
+    /** the smallest change that makes a cached result stale. Results depending on instructions (def-use, liveness)
+     *  are stale after any change, results depending only on the block graph survive INSTRUCTIONS changes. */
+    default Change invalidatedBy() {
+        return Change.INSTRUCTIONS;
+    }
+}
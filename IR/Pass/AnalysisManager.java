@@ -0,0 +1,56 @@
+package IR.Pass;
+
+import IR.Search.DefinitionCache;
+import IR.SSAIR.SSAIR;
+
+import java.util.IdentityHashMap;
+
+/** cache of the analyses of one SSAIR. A result is computed on first use and kept until invalidate() is told about a
+ *  change that makes it stale. Independently of what passes report, every result is dropped when the CFG shape
+ *  changed since it was computed (block links change through BasicBlock, which ticks the compile's clock), so results
+ *  asked for while the IR is still being built are never stale either. */
+public class AnalysisManager
+{
+    private final SSAIR ir;
+    private final DefinitionCache.Clock clock;
+    private final IdentityHashMap<Analysis<?>, Object> results = new IdentityHashMap<>();
+    private int computedAt;
+
+    public AnalysisManager(SSAIR ir, DefinitionCache.Clock clock) {
+        this.ir = ir;
+        this.clock = clock;
+    }
+
+    /** cached result of analysis, computed now if there is none */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Analysis<T> analysis) {
+        if (clock.shapeChangedAt() > computedAt) {
+            results.clear();
+            computedAt = clock.now();
+        }
+        Object result = results.get(analysis);
+        if (result == null) {
+            result = analysis.compute(ir, this);
+            results.put(analysis, result);
+        }
+        return (T) result;
+    }
+
+    /** true if a result of analysis is cached */
+    public boolean isCached(Analysis<?> analysis) {
+        return results.containsKey(analysis) && clock.shapeChangedAt() <= computedAt;
+    }
+
+    /** drops the results made stale by change */
+    public void invalidate(Change change) {
+        if (change == Change.NONE) {
+            return;
+        }
+        results.entrySet().removeIf(e -> change.compareTo(e.getKey().invalidatedBy()) >= 0);
+    }
+
+    /** drops every result */
+    public void invalidateAll() {
+        results.clear();
+    }
+}
@@ -0,0 +1,9 @@
+package IR.Pass;
+
+/** what a pass changed in the IR it ran on, each level includes the ones before it. Tells the AnalysisManager which
+ *  cached analyses are stale. */
+public enum Change {
+    NONE,               // nothing changed
+    INSTRUCTIONS,       // instructions or operands changed, blocks and their links did not
+    CONTROL_FLOW        // blocks or block links changed
+}
@@ -0,0 +1,40 @@
+package IR.Pass;
+
+import IR.BasicBlock.BasicBlock;
+import IR.CFG.ControlFlowGraph;
+import IR.Instruction.Instruction;
+import IR.SSAIR.SSAIR;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** replaces every use of an instruction eliminated by a common subexpression with the instruction that eliminated it.
+ *  The eliminated instructions stay in their blocks (they are printed as eliminated), only their users are rewritten.
+ *  Runs in increasing id order, so chains (a eliminated by b, b later eliminated by c) end at the last eliminator. */
+public class CommonSubexprPropagation implements Pass
+{
+    public String getName() {
+        return "cse-propagation";
+    }
+
+    public Change run(SSAIR ir, AnalysisManager analyses) {
+        ControlFlowGraph cfg = analyses.get(Analyses.CONTROL_FLOW_GRAPH);
+        List<Instruction> eliminated = new ArrayList<>();
+        for (BasicBlock block : cfg.blocks()) {
+            for (Instruction instr : block.getInstructions()) {
+                if (instr.isEliminated()) {
+                    eliminated.add(instr);
+                }
+            }
+        }
+        if (eliminated.isEmpty()) {
+            return Change.NONE;
+        }
+        eliminated.sort(Comparator.comparingInt(Instruction::getId));
+        for (Instruction instr : eliminated) {
+            instr.replaceAllUsesWith(instr.getEliminator());
+        }
+        return Change.INSTRUCTIONS;
+    }
+}
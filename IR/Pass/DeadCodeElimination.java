@@ -0,0 +1,133 @@
+package IR.Pass;
+
+import IR.BasicBlock.BasicBlock;
+import IR.CFG.ControlFlowGraph;
+import IR.Instruction.Instruction;
+import IR.SSAIR.SSAIR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**                     ------------------- DEAD CODE ELIMINATION ---------------------
+ *
+ *  Mark-sweep over the SSA graph, an instruction is dead unless a live instruction needs it.
+ *
+ *  ROOTS:      instructions with an effect outside their value: WRITE, WRITENL, READ (consumes input), CALL and the
+ *              MJUs moving its arguments, RET, STORE, END, branches, the BRANCH_TO placeholders they target and the
+ *              REGs holding parameters.
+ *
+ *  MARK:       the operands of a live instruction are live (not the target of a branch), and so is the CMP a live
+ *              conditional branch consumes.
+ *
+ *  SWEEP:      every unmarked instruction of a reachable block is removed, including instructions eliminated by CSE
+ *              (their users were moved to the eliminating instruction). Blocks no longer reachable from the head block
+ *              are unlinked and removed with their instructions.
+ *  */
+public class DeadCodeElimination implements Pass
+{
+    public String getName() {
+        return "dce";
+    }
+
+    public Change run(SSAIR ir, AnalysisManager analyses) {
+        ControlFlowGraph cfg = analyses.get(Analyses.CONTROL_FLOW_GRAPH);
+        boolean blocksRemoved = removeUnreachableBlocks(ir, cfg);
+        boolean instructionsRemoved = removeDeadInstructions(ir, cfg);
+        return blocksRemoved ? Change.CONTROL_FLOW : instructionsRemoved ? Change.INSTRUCTIONS : Change.NONE;
+    }
+
+    // ---------------------- UNREACHABLE BLOCKS ------------------------ //
+
+    private boolean removeUnreachableBlocks(SSAIR ir, ControlFlowGraph cfg) {
+        List<BasicBlock> unreachable = new ArrayList<>();
+        for (BasicBlock block : ir.getBlocks()) {
+            if (cfg.index(block) < 0) {
+                unreachable.add(block);
+            }
+        }
+        if (unreachable.isEmpty()) {
+            return false;
+        }
+        List<Instruction> removed = new ArrayList<>();
+        for (BasicBlock block : unreachable) {
+            for (Instruction instr : block.getInstructions()) {
+                instr.dropOperandUses();
+                instr.setBlockId(0);
+                removed.add(instr);
+            }
+            block.detach();
+        }
+        // only a phi operand flowing in over a removed edge can still be used, it is now undefined on a dead path
+        for (Instruction instr : removed) {
+            instr.replaceValueUsesWith(null);
+        }
+        ir.removeBlocks(unreachable);
+        return true;
+    }
+
+    // ---------------------- DEAD INSTRUCTIONS ------------------------ //
+
+    private boolean removeDeadInstructions(SSAIR ir, ControlFlowGraph cfg) {
+        Set<Instruction> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Instruction> work = new ArrayDeque<>();
+        for (BasicBlock block : cfg.blocks()) {
+            for (Instruction instr : block.getInstructions()) {
+                if (instr.isEliminated()) {
+                    Instruction eliminator = instr.getEliminator();
+                    while (eliminator.isEliminated()) {
+                        eliminator = eliminator.getEliminator();
+                    }
+                    instr.replaceValueUsesWith(eliminator);
+                } else if (isRoot(instr) && live.add(instr)) {
+                    work.add(instr);
+                }
+            }
+        }
+        while (!work.isEmpty()) {
+            Instruction instr = work.poll();
+            if (instr.isConditionalBranch()) {
+                Instruction cmp = instr.getCondition();
+                if (cmp != null && live.add(cmp)) {
+                    work.add(cmp);
+                }
+            }
+            if (instr.isBranch()) {
+                continue;
+            }
+            for (Instruction operand : instr.getOperands()) {
+                if (live.add(operand)) {
+                    work.add(operand);
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (BasicBlock block : cfg.blocks()) {
+            List<Instruction> dead = new ArrayList<>();
+            for (Instruction instr : block.getInstructions()) {
+                if (!live.contains(instr)) {
+                    dead.add(instr);
+                }
+            }
+            for (Instruction instr : dead) {
+                ir.removeInstruction(block, instr);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isRoot(Instruction instr) {
+        switch (instr.getOpType()) {
+            case WRITE: case WRITENL: case READ: case CALL: case MJU: case RET: case STORE: case END:
+            case BRANCH_TO: case REG:
+                return true;
+            default:
+                return instr.isBranch();
+        }
+    }
+}
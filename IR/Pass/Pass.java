@@ -0,0 +1,13 @@
+package IR.Pass;
+
+import IR.SSAIR.SSAIR;
+
+/** an IR pass run by the PassManager on one SSAIR (the main program or one function) at a time */
+public interface Pass {
+
+    String getName();
+
+    /** transforms ir, returns what it changed. Analyses come from analyses and are only valid until the pass changes
+     *  what they depend on. */
+    Change run(SSAIR ir, AnalysisManager analyses);
+}
@@ -0,0 +1,140 @@
+package IR.Pass;
+
+import IR.BasicBlock.BasicBlock;
+import IR.CFG.ControlFlowGraph;
+import IR.SSAIR.SSAIR;
+import trace.TraceLevel;
+import trace.Tracer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**                     ------------------- PASS MANAGER ---------------------
+ *
+ *  Runs an ordered list of passes over one SSAIR at a time (the main program and every function body).
+ *
+ *  ANALYSES:       passes get their analyses from the SSAIR's AnalysisManager. After each pass the results made stale
+ *                  by the Change it reports are dropped, everything else is reused by the next pass.
+ *
+ *  STATISTICS:     per pass, summed over every SSAIR it ran on: runs, runs that changed the IR, wall time, and the
+ *                  change in reachable blocks and instructions. Traced at INFO after every run.
+ *  */
+public class PassManager
+{
+    private final Tracer tracer;
+    private final List<Pass> passes = new ArrayList<>();
+    private final Map<String, Statistics> statistics = new LinkedHashMap<>();
+
+    public PassManager(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /** the passes run at the end of every compile. trivial-phi runs again after sccp: resolving a phi to the side that
+     *  stays reachable can leave the phis using it trivial, e.g. a loop phi(v, phi) */
+    public static PassManager defaultPipeline(Tracer tracer) {
+        PassManager passManager = new PassManager(tracer);
+        passManager.add(new CommonSubexprPropagation());
+        passManager.add(new TrivialPhiElimination());
+        passManager.add(new SparseConditionalConstantPropagation());
+        passManager.add(new TrivialPhiElimination());
+        passManager.add(new DeadCodeElimination());
+        return passManager;
+    }
+
+    public PassManager add(Pass pass) {
+        passes.add(pass);
+        statistics.putIfAbsent(pass.getName(), new Statistics(pass.getName()));
+        return this;
+    }
+
+    /** runs every pass in order over ir */
+    public void run(SSAIR ir) {
+        AnalysisManager analyses = ir.getAnalyses();
+        for (Pass pass : passes) {
+            int blocksBefore = analyses.get(Analyses.CONTROL_FLOW_GRAPH).size();
+            int instructionsBefore = instructionCount(analyses.get(Analyses.CONTROL_FLOW_GRAPH));
+            long start = System.nanoTime();
+            Change change = pass.run(ir, analyses);
+            long elapsed = System.nanoTime() - start;
+            analyses.invalidate(change);
+            int blocksAfter = analyses.get(Analyses.CONTROL_FLOW_GRAPH).size();
+            int instructionsAfter = instructionCount(analyses.get(Analyses.CONTROL_FLOW_GRAPH));
+
+            Statistics stats = statistics.get(pass.getName());
+            stats.record(change, elapsed, blocksAfter - blocksBefore, instructionsAfter - instructionsBefore);
+            if (tracer.isEnabled(TraceLevel.INFO)) {
+                tracer.trace(TraceLevel.INFO, "pass " + pass.getName(), String.format(
+                        "%s in %.3f ms, blocks %d -> %d, instrs %d -> %d", change, elapsed / 1e6,
+                        blocksBefore, blocksAfter, instructionsBefore, instructionsAfter));
+            }
+        }
+    }
+
+    /** statistics of every pass, in the order they were added */
+    public List<Statistics> getStatistics() {
+        return new ArrayList<>(statistics.values());
+    }
+
+    private static int instructionCount(ControlFlowGraph cfg) {
+        int count = 0;
+        for (BasicBlock block : cfg.blocks()) {
+            count += block.getInstructions().size();
+        }
+        return count;
+    }
+
+    /** totals of one pass over every SSAIR it ran on */
+    public static class Statistics {
+        private final String name;
+        private int runs;
+        private int changedRuns;
+        private long nanos;
+        private int blockDelta;
+        private int instructionDelta;
+
+        Statistics(String name) {
+            this.name = name;
+        }
+
+        void record(Change change, long elapsed, int blocks, int instructions) {
+            runs++;
+            if (change != Change.NONE) {
+                changedRuns++;
+            }
+            nanos += elapsed;
+            blockDelta += blocks;
+            instructionDelta += instructions;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getChangedRuns() {
+            return changedRuns;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getBlockDelta() {
+            return blockDelta;
+        }
+
+        public int getInstructionDelta() {
+            return instructionDelta;
+        }
+
+        public String toString() {
+            return String.format("%s: %d runs (%d changed), %.3f ms, blocks %+d, instrs %+d",
+                    name, runs, changedRuns, nanos / 1e6, blockDelta, instructionDelta);
+        }
+    }
+}
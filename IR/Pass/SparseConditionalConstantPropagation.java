@@ -0,0 +1,462 @@
+package IR.Pass;
+
+import IR.BasicBlock.BasicBlock;
+import IR.CFG.ControlFlowGraph;
+import IR.CFG.DominatorTree;
+import IR.Instruction.BinaryInstr;
+import IR.Instruction.ConstantInstr;
+import IR.Instruction.Instruction;
+import IR.Instruction.UnaryInstr;
+import IR.SSAIR.SSAIR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**                 ------------------- SPARSE CONDITIONAL CONSTANT PROPAGATION ---------------------
+ *
+ *  Wegman & Zadeck: every instruction gets a lattice value, TOP (no value seen yet) > CONSTANT c > BOTTOM (not a
+ *  constant), and every CFG edge starts out not executable. Starting from the head block, blocks are visited when an
+ *  edge into them becomes executable, instructions are re-evaluated when an operand's value drops, until nothing
+ *  changes.
+ *
+ *  BRANCHES:   a conditional branch consumes the CMP before it in its block. Only the successor the CMP value selects
+ *              becomes executable, both do once the CMP is BOTTOM. A BRA only makes its branchTo executable.
+ *
+ *  PHIS:       meet of the operands whose incoming edge is executable. Operand order follows the CFG generation: at a
+ *              while block op1 comes from the entry, op2 from the back edge (predecessors the while block dominates);
+ *              at an if-join op1 comes from the then side (predecessors the then-block dominates), op2 from the else
+ *              side or the if-block itself. If the sides cannot be told apart, both operands are met.
+ *
+ *  REWRITE:    1) uses of a value found to be constant are rewritten to the constant from the head block's pool
+ *              2) a branch with a constant condition becomes a BRA (always taken) or is removed (never taken), the
+ *                 edge that is never taken is unlinked, so the blocks only reachable through it drop out of the CFG
+ *              3) phis of a join that lost one side are replaced by their operand from the other side
+ *  The now unused instructions and unreachable blocks stay where they are, dead code elimination removes them.
+ *  */
+public class SparseConditionalConstantPropagation implements Pass
+{
+    private static final byte TOP = 0, CONSTANT = 1, BOTTOM = 2;
+    private static final int UNKNOWN_SIDE = 0, FIRST = 1, SECOND = 2;
+
+    private ControlFlowGraph cfg;
+    private byte[] state;                   // instruction id -> lattice value
+    private int[] value;                    // instruction id -> constant, if CONSTANT
+    private int[] blockOf;                  // instruction id -> block index, -1 if not in a reachable block
+    private boolean[] executable;           // block index -> reached
+    private boolean[][] executableEdge;     // block index -> parallel to cfg.predecessors(block)
+    private int[][] phiSide;                // block index -> parallel to cfg.predecessors(block), null without phis
+    private ArrayDeque<Instruction> instructionWork;
+    private ArrayDeque<Integer> blockWork;
+
+    public String getName() {
+        return "sccp";
+    }
+
+    public Change run(SSAIR ir, AnalysisManager analyses) {
+        cfg = analyses.get(Analyses.CONTROL_FLOW_GRAPH);
+        initialize(analyses.get(Analyses.DOMINATOR_TREE));
+        solve();
+        Change change = rewrite(ir);
+        cfg = null;
+        state = null;
+        value = null;
+        blockOf = null;
+        executable = null;
+        executableEdge = null;
+        phiSide = null;
+        return change;
+    }
+
+    // ---------------------- SOLVER ------------------------ //
+
+    private void initialize(DominatorTree dominators) {
+        int n = cfg.size();
+        int maxId = 0;
+        for (BasicBlock block : cfg.blocks()) {
+            for (Instruction instr : block.getInstructions()) {
+                maxId = Math.max(maxId, instr.getId());
+            }
+        }
+        state = new byte[maxId + 1];
+        value = new int[maxId + 1];
+        blockOf = new int[maxId + 1];
+        Arrays.fill(blockOf, -1);
+        executable = new boolean[n];
+        executableEdge = new boolean[n][];
+        phiSide = new int[n][];
+        for (int b = 0; b < n; b++) {
+            executableEdge[b] = new boolean[cfg.predecessors(b).length];
+            boolean hasPhi = false;
+            for (Instruction instr : cfg.block(b).getInstructions()) {
+                blockOf[instr.getId()] = b;
+                hasPhi |= instr.getOpType() == Instruction.Op.PHI;
+            }
+            if (hasPhi) {
+                phiSide[b] = phiSides(b, dominators);
+            }
+        }
+        instructionWork = new ArrayDeque<>();
+        blockWork = new ArrayDeque<>();
+    }
+
+    /** which phi operand each predecessor of join provides, all UNKNOWN_SIDE if the sides cannot be told apart */
+    private int[] phiSides(int join, DominatorTree dominators) {
+        int[] predecessors = cfg.predecessors(join);
+        int[] sides = new int[predecessors.length];
+        BasicBlock block = cfg.block(join);
+        int thenBlock = -1;
+        if (!block.isBlockType(BasicBlock.BlockType.WHILE) && join != 0) {
+            BasicBlock fallThruTo = cfg.block(dominators.immediateDominator(join)).getFallThruTo();
+            thenBlock = fallThruTo != null ? cfg.index(fallThruTo) : -1;
+            if (thenBlock < 0 || thenBlock == join) {
+                return sides;
+            }
+        }
+        boolean first = false, second = false;
+        for (int k = 0; k < predecessors.length; k++) {
+            boolean firstSide = thenBlock < 0 ? !dominators.dominates(join, predecessors[k])
+                                              : dominators.dominates(thenBlock, predecessors[k]);
+            sides[k] = firstSide ? FIRST : SECOND;
+            first |= firstSide;
+            second |= !firstSide;
+        }
+        if (!first || !second) {
+            Arrays.fill(sides, UNKNOWN_SIDE);
+        }
+        return sides;
+    }
+
+    private void solve() {
+        if (cfg.size() == 0) {
+            return;
+        }
+        executable[0] = true;
+        blockWork.add(0);
+        while (!blockWork.isEmpty() || !instructionWork.isEmpty()) {
+            while (!instructionWork.isEmpty()) {
+                Instruction instr = instructionWork.poll();
+                int b = blockOf[instr.getId()];
+                if (instr.isBranch() || instr.getOpType() == Instruction.Op.CMP) {
+                    visitTerminator(b);
+                }
+                if (!instr.isBranch()) {
+                    evaluate(instr);
+                }
+            }
+            if (!blockWork.isEmpty()) {
+                int b = blockWork.poll();
+                for (Instruction instr : cfg.block(b).getInstructions()) {
+                    evaluate(instr);
+                }
+                visitTerminator(b);
+            }
+        }
+    }
+
+    /** marks the successors the end of block b can reach as executable */
+    private void visitTerminator(int b) {
+        if (!executable[b]) {
+            return;
+        }
+        BasicBlock block = cfg.block(b);
+        Instruction last = block.isEmpty() ? null : block.getInstructions().getLast();
+        BasicBlock fallThruTo = block.getFallThruTo(), branchTo = block.getBranchTo();
+        if (last != null && last.isBranch() && branchesTo(last, branchTo)) {
+            if (last.getOpType() == Instruction.Op.BRA) {
+                markEdge(b, branchTo);
+                return;
+            }
+            Instruction cmp = last.getCondition();
+            if (cmp != null && state[cmp.getId()] == TOP) {
+                return;
+            }
+            if (cmp != null && state[cmp.getId()] == CONSTANT) {
+                markEdge(b, isTaken(last.getOpType(), value[cmp.getId()]) ? branchTo : fallThruTo);
+                return;
+            }
+        }
+        markEdge(b, fallThruTo);
+        markEdge(b, branchTo);
+    }
+
+    private void markEdge(int from, BasicBlock successor) {
+        if (successor == null) {
+            return;
+        }
+        int to = cfg.index(successor);
+        int[] predecessors = cfg.predecessors(to);
+        for (int k = 0; k < predecessors.length; k++) {
+            if (predecessors[k] == from && !executableEdge[to][k]) {
+                executableEdge[to][k] = true;
+                if (!executable[to]) {
+                    executable[to] = true;
+                    blockWork.add(to);
+                } else {
+                    for (Instruction instr : successor.getInstructions()) {
+                        if (instr.getOpType() != Instruction.Op.PHI) {
+                            break;                  // phis are kept together at the head of the block
+                        }
+                        evaluate(instr);
+                    }
+                }
+            }
+        }
+    }
+
+    /** lowers instr's lattice value to what its operands give, queues its users if it changed */
+    private void evaluate(Instruction instr) {
+        int id = instr.getId();
+        if (state[id] == BOTTOM) {
+            return;
+        }
+        byte newState;
+        int newValue = 0;
+        switch (instr.getOpType()) {
+            case CONST:
+                newState = CONSTANT;
+                newValue = ((ConstantInstr) instr).getValue();
+                break;
+            case NEG: {
+                Instruction op = ((UnaryInstr) instr).getOp();
+                newState = stateOf(op);
+                newValue = newState == CONSTANT ? -value[op.getId()] : 0;
+                break;
+            }
+            case ADD: case SUB: case MUL: case DIV: case CMP: {
+                BinaryInstr binary = (BinaryInstr) instr;
+                byte s1 = stateOf(binary.getOp1()), s2 = stateOf(binary.getOp2());
+                if (s1 == BOTTOM || s2 == BOTTOM) {
+                    newState = BOTTOM;
+                } else if (s1 == TOP || s2 == TOP) {
+                    newState = TOP;
+                } else {
+                    int c1 = value[binary.getOp1().getId()], c2 = value[binary.getOp2().getId()];
+                    newState = instr.getOpType() == Instruction.Op.DIV && c2 == 0 ? BOTTOM : CONSTANT;
+                    newValue = newState == CONSTANT ? fold(instr.getOpType(), c1, c2) : 0;
+                }
+                break;
+            }
+            case PHI: {
+                int[] meet = evaluatePhi((BinaryInstr) instr);
+                newState = (byte) meet[0];
+                newValue = meet[1];
+                break;
+            }
+            default:
+                newState = BOTTOM;
+        }
+        if (newState == CONSTANT && state[id] == CONSTANT && value[id] != newValue) {
+            newState = BOTTOM;
+        }
+        if (newState > state[id]) {
+            state[id] = newState;
+            value[id] = newValue;
+            for (Instruction user : instr.getUsers()) {
+                int b = user.getId() < blockOf.length ? blockOf[user.getId()] : -1;
+                if (b >= 0 && executable[b]) {
+                    instructionWork.add(user);
+                }
+            }
+            if (instr.getOpType() == Instruction.Op.CMP) {
+                instructionWork.add(instr);
+            }
+        }
+    }
+
+    /** {state, value} of the meet of phi's operands over the executable incoming edges */
+    private int[] evaluatePhi(BinaryInstr phi) {
+        int join = blockOf[phi.getId()];
+        int[] predecessors = cfg.predecessors(join);
+        int[] meet = { TOP, 0 };
+        for (int k = 0; k < predecessors.length; k++) {
+            if (!executableEdge[join][k]) {
+                continue;
+            }
+            int side = phiSide[join][k];
+            if (side != SECOND) {
+                meetWith(meet, phi.getOp1());
+            }
+            if (side != FIRST) {
+                meetWith(meet, phi.getOp2());
+            }
+        }
+        return meet;
+    }
+
+    private void meetWith(int[] meet, Instruction operand) {
+        byte s = stateOf(operand);
+        if (s == TOP || meet[0] == BOTTOM) {
+            return;
+        }
+        if (s == BOTTOM || (meet[0] == CONSTANT && meet[1] != value[operand.getId()])) {
+            meet[0] = BOTTOM;
+        } else {
+            meet[0] = CONSTANT;
+            meet[1] = value[operand.getId()];
+        }
+    }
+
+    /** lattice value of an operand, BOTTOM for a missing operand or one outside the reachable blocks */
+    private byte stateOf(Instruction operand) {
+        if (operand == null || operand.getId() >= blockOf.length || blockOf[operand.getId()] < 0) {
+            return BOTTOM;
+        }
+        return state[operand.getId()];
+    }
+
+    // ---------------------- REWRITE ------------------------ //
+
+    private Change rewrite(SSAIR ir) {
+        Change change = Change.NONE;
+        int n = cfg.size();
+        for (int b = 0; b < n; b++) {
+            if (!executable[b]) {
+                continue;
+            }
+            for (Instruction instr : snapshot(cfg.block(b))) {     // the head block gains constants
+                if (state[instr.getId()] != CONSTANT || instr.isEliminated() || !producesValue(instr)
+                        || !hasValueUsers(instr)) {
+                    continue;
+                }
+                ir.replaceValue(instr, ir.addConstantIfNotExists(value[instr.getId()]));
+                change = Change.INSTRUCTIONS;
+            }
+        }
+
+        // phi sides are resolved on the CFG as solved, before any edge is unlinked
+        List<int[]> resolvedJoins = new ArrayList<>();
+        for (int b = 0; b < n; b++) {
+            int side = remainingSide(b);
+            if (side != UNKNOWN_SIDE) {
+                resolvedJoins.add(new int[] { b, side });
+            }
+        }
+        for (int b = 0; b < n; b++) {
+            if (executable[b] && foldBranch(ir, b)) {
+                change = Change.CONTROL_FLOW;
+            }
+        }
+        for (int[] resolved : resolvedJoins) {
+            BasicBlock join = cfg.block(resolved[0]);
+            for (Instruction instr : snapshot(join)) {
+                if (instr.getOpType() != Instruction.Op.PHI) {
+                    continue;
+                }
+                BinaryInstr phi = (BinaryInstr) instr;
+                // a null operand (uninitialized on the remaining side) becomes a null operand of the users
+                ir.replaceValue(phi, resolved[1] == FIRST ? phi.getOp1() : phi.getOp2());
+                ir.removeInstruction(join, phi);
+            }
+        }
+        return change;
+    }
+
+    /** the phi operand side all executable edges into join come from, UNKNOWN_SIDE unless join is executable, has
+     *  phis with known sides and some of its incoming edges are not executable */
+    private int remainingSide(int join) {
+        if (!executable[join] || phiSide[join] == null) {
+            return UNKNOWN_SIDE;
+        }
+        int side = UNKNOWN_SIDE;
+        boolean lostEdge = false;
+        for (int k = 0; k < phiSide[join].length; k++) {
+            if (!executableEdge[join][k]) {
+                lostEdge = true;
+            } else if (side == UNKNOWN_SIDE) {
+                side = phiSide[join][k];
+            } else if (side != phiSide[join][k]) {
+                return UNKNOWN_SIDE;
+            }
+        }
+        return lostEdge ? side : UNKNOWN_SIDE;
+    }
+
+    /** folds the conditional branch at the end of block b if its CMP is constant, returns true if an edge was removed */
+    private boolean foldBranch(SSAIR ir, int b) {
+        BasicBlock block = cfg.block(b);
+        Instruction last = block.isEmpty() ? null : block.getInstructions().getLast();
+        if (last == null || !last.isConditionalBranch() || !branchesTo(last, block.getBranchTo())) {
+            return false;
+        }
+        Instruction cmp = last.getCondition();
+        if (cmp == null || state[cmp.getId()] != CONSTANT || block.getFallThruTo() == block.getBranchTo()) {
+            return false;
+        }
+        if (isTaken(last.getOpType(), value[cmp.getId()])) {
+            ((UnaryInstr) last).makeUnconditional();
+            if (block.getFallThruTo() != null) {
+                block.unlinkSuccessor(block.getFallThruTo());
+            }
+        } else {
+            ir.removeInstruction(block, last);
+            block.unlinkSuccessor(block.getBranchTo());
+        }
+        return true;
+    }
+
+    // ---------------------- HELPERS ------------------------ //
+
+    /** true if branch targets the first instruction of branchTo */
+    private static boolean branchesTo(Instruction branch, BasicBlock branchTo) {
+        Instruction target = ((UnaryInstr) branch).getOp();
+        return branchTo != null && target != null && target == branchTo.getFirstInstr();
+    }
+
+
+    /** true if a conditional branch op is taken when its CMP gives cmp (compare(op1, op2)) */
+    private static boolean isTaken(Instruction.Op op, int cmp) {
+        switch (op) {
+            case BEQ:
+                return cmp == 0;
+            case BNE:
+                return cmp != 0;
+            case BLT:
+                return cmp < 0;
+            case BLE:
+                return cmp <= 0;
+            case BGT:
+                return cmp > 0;
+            default:
+                return cmp >= 0;
+        }
+    }
+
+    private static int fold(Instruction.Op op, int c1, int c2) {
+        switch (op) {
+            case ADD:
+                return c1 + c2;
+            case SUB:
+                return c1 - c2;
+            case MUL:
+                return c1 * c2;
+            case DIV:
+                return c1 / c2;
+            default:
+                return Integer.compare(c1, c2);
+        }
+    }
+
+    /** value computed from operands that can be replaced by a constant, CMP results are consumed by the branch */
+    private static boolean producesValue(Instruction instr) {
+        return instr.isPureValue() || instr.getOpType() == Instruction.Op.PHI;
+    }
+
+    private static List<Instruction> snapshot(BasicBlock block) {
+        List<Instruction> instructions = new ArrayList<>(block.getInstructions().size());
+        for (Instruction instr : block.getInstructions()) {
+            instructions.add(instr);
+        }
+        return instructions;
+    }
+
+    private static boolean hasValueUsers(Instruction instr) {
+        for (Instruction user : instr.getUsers()) {
+            if (!user.isBranch()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package IR.Pass;
+
+import IR.BasicBlock.BasicBlock;
+import IR.CFG.ControlFlowGraph;
+import IR.CFG.DominatorTree;
+import IR.Instruction.BinaryInstr;
+import IR.Instruction.Instruction;
+import IR.SSAIR.SSAIR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**                     ------------------- TRIVIAL PHI ELIMINATION ---------------------
+ *
+ *  Phis are inserted eagerly while the CFG is built: for every variable assigned in a branch or loop body, whether or
+ *  not its value really changes. A phi is trivial if, ignoring operands that are the phi itself or null (uninitialized
+ *  on that path), it merges a single value v: phi(v, v), a loop phi(v, phi), phi(v, null). Its uses are rewritten to v
+ *  and the phi is removed (Braun et al., "Simple and Efficient Construction of SSA Form").
+ *
+ *  COPIES:         "let x <- y" emits no instruction, x is bound to y's value in the symbol table. The copies this
+ *                  leaves in the IR are exactly phis like phi(y, y), so removing trivial phis propagates them.
+ *
+ *  ITERATION:      removing a phi can make the phis using it trivial, those are queued again until none is left.
+ *
+ *  v must dominate the phi's block (always the case unless an operand is null), otherwise the phi is kept.
+ *  */
+public class TrivialPhiElimination implements Pass
+{
+    public String getName() {
+        return "trivial-phi";
+    }
+
+    public Change run(SSAIR ir, AnalysisManager analyses) {
+        ControlFlowGraph cfg = analyses.get(Analyses.CONTROL_FLOW_GRAPH);
+        DominatorTree dominators = analyses.get(Analyses.DOMINATOR_TREE);
+        ArrayDeque<BinaryInstr> work = new ArrayDeque<>();
+        for (BasicBlock block : cfg.blocks()) {
+            for (Instruction instr : block.getInstructions()) {
+                if (instr.getOpType() != Instruction.Op.PHI) {
+                    break;                          // phis are kept together at the head of the block
+                }
+                work.add((BinaryInstr) instr);
+            }
+        }
+        boolean changed = false;
+        while (!work.isEmpty()) {
+            BinaryInstr phi = work.poll();
+            int join = cfg.indexOfBlockId(phi.getBlockId());
+            if (join < 0) {
+                continue;                           // already removed
+            }
+            Instruction value = trivialValue(phi);
+            if (value == null || !dominates(cfg, dominators, value, join)) {
+                continue;
+            }
+            List<Instruction> users = new ArrayList<>(phi.getUsers());
+            ir.replaceValue(phi, value);
+            ir.removeInstruction(cfg.block(join), phi);
+            changed = true;
+            for (Instruction user : users) {
+                if (user != phi && user.getOpType() == Instruction.Op.PHI) {
+                    work.add((BinaryInstr) user);
+                }
+            }
+        }
+        return changed ? Change.INSTRUCTIONS : Change.NONE;
+    }
+
+    /** the single value phi merges besides itself and null operands, null if it merges two or none */
+    private static Instruction trivialValue(BinaryInstr phi) {
+        Instruction value = null;
+        for (Instruction operand : phi.getOperands()) {
+            if (operand == phi || operand == value) {
+                continue;
+            }
+            if (value != null) {
+                return null;
+            }
+            value = operand;
+        }
+        return value;
+    }
+
+    /** true if value is defined in the phi's block or a block dominating it */
+    private static boolean dominates(ControlFlowGraph cfg, DominatorTree dominators, Instruction value, int join) {
+        int block = cfg.indexOfBlockId(value.getBlockId());
+        return block >= 0 && dominators.dominates(block, join);
+    }
+}
@@ -1,15 +1,18 @@
 package IR.SSAIR;
 
 import IR.BasicBlock.BasicBlock;
+import IR.Context.CompilationContext;
 import IR.Function.Function;
 import IR.Instruction.FunctionCall;
 import IR.Instruction.Instruction;
 import IR.Instruction.RegisterInstr;
+import IR.Pass.PassManager;
+import frontend.IdentifierTable;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
 /** the global SSAIR, stores a list of Functions of function declarations and the current SSA CFG */
 public class GlobalSSAIR
@@ -19,10 +22,24 @@ public class GlobalSSAIR
 
     private SSAIR currentIR;
     private Function currentFunction;
+    private final CompilationContext context;
 
-    public GlobalSSAIR() {
+    public GlobalSSAIR(CompilationContext context) {
+        this.context = context;
         functions = new ArrayList<>();
-        globalIR = currentIR = new SSAIR();
+        globalIR = currentIR = new SSAIR(context);
+    }
+
+    /** IR for building a single function declaration in a forked context. There is no global CFG, only the functions
+     *  declared before this one (for void checks of calls). */
+    public GlobalSSAIR(CompilationContext context, List<Function> declaredBefore) {
+        this.context = context;
+        functions = new ArrayList<>(declaredBefore);
+        globalIR = currentIR = null;
+    }
+
+    public CompilationContext getContext() {
+        return context;
     }
 
     public void restoreGlobalIR() {
@@ -33,13 +50,26 @@ public class GlobalSSAIR
 
     /** create new function object and add to list of Function, set currentIr to funcIR */
     public void enterFunctionDef() {
-        SSAIR funcIR = new SSAIR();
+        SSAIR funcIR = new SSAIR(context);
         Function thisFunc = new Function(funcIR);
         functions.add(thisFunc);
         currentIR = funcIR;
         currentFunction = thisFunc;
     }
 
+    public Function getCurrentFunction() {
+        return currentFunction;
+    }
+
+    /** adds a function built by another GlobalSSAIR in a forked context that has been joined into this one, in
+     *  declaration order */
+    public void addFunction(Function function) {
+        if (function.getSSAIR() != null) {
+            function.getSSAIR().joinedInto(context);
+        }
+        functions.add(function);
+    }
+
     /** set current function's isVoid to true */
     public void currentFunctionIsVoid() {
         currentFunction.setIsVoid();
@@ -58,7 +88,7 @@ public class GlobalSSAIR
     /** adds current function params into function's SSAIR's symbol table, values are represented as RegisterInstr */
     public void initializeParamsVarDecl() {
         for (int id: currentFunction.getParams()) {
-            RegisterInstr reg = new RegisterInstr();
+            RegisterInstr reg = new RegisterInstr(context);
             currentIR.insertRegisterInstrToHead(reg);
             currentIR.assign(id, reg);
         }
@@ -66,7 +96,7 @@ public class GlobalSSAIR
 
     /** calls current function by inserting call instruction */
     public Instruction callCurrentFunction(int id, String fname) {
-        Instruction call = new FunctionCall(id, fname);
+        Instruction call = new FunctionCall(context, id, fname);
         currentIR.insertInstrToCurrentBlock(call);
         return call;
 
@@ -109,8 +139,12 @@ public class GlobalSSAIR
         return currentIR.findJoinBlock();
     }
 
-    public BasicBlock enterWhile() {
-        return currentIR.enterWhile();
+    public BasicBlock enterWhile(BitSet assigned) {
+        return currentIR.enterWhile(assigned);
+    }
+
+    public void exitWhile() {
+        currentIR.exitWhile();
     }
 
     // ------------------------- SSA INSTRUCTION GENERATION METHODS --------------------------- //
@@ -127,6 +161,10 @@ public class GlobalSSAIR
         return currentIR.insertInstrToCurrentBlock(i);
     }
 
+    public Instruction emitBinary(Instruction.Op op, Instruction op1, Instruction op2, int op1IdRef, int op2IdRef) {
+        return currentIR.emitBinary(op, op1, op2, op1IdRef, op2IdRef);
+    }
+
     public Instruction getIdentifierInstruction(int id) {
         return currentIR.getIdentifierInstruction(id);
     }
@@ -155,10 +193,18 @@ public class GlobalSSAIR
         currentIR.addBranchInstr(target);
     }
 
-    // -------------------------------- CSE METHODS ---------------------------------- //
+    // ----------------------------- OPTIMIZATION METHODS ------------------------------ //
 
-    public void propagateCommonSubexpr() {
-        currentIR.propagateCommonSubexpr();
+    /** runs passes over every function body, then over the main program */
+    public void optimize(PassManager passes) {
+        for (Function function : functions) {
+            if (function.getSSAIR() != null) {
+                passes.run(function.getSSAIR());
+                function.getSSAIR().rebindSymbolTables();
+            }
+        }
+        passes.run(globalIR);
+        globalIR.rebindSymbolTables();
     }
 
     public boolean error() {
@@ -167,7 +213,7 @@ public class GlobalSSAIR
 
     // ------------------------- VISUALIZATION METHODS --------------------------- //
 
-    public void printCFG(Map<String, Integer> lexerMap, boolean showSymbolTable) {
-        currentIR.printCFG(lexerMap, showSymbolTable);
+    public void printCFG(IdentifierTable identifiers, boolean showSymbolTable) {
+        currentIR.printCFG(identifiers, showSymbolTable);
     }
 }
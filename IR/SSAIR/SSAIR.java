@@ -1,34 +1,64 @@
 package IR.SSAIR;
 
 import IR.BasicBlock.BasicBlock;
+import IR.CFG.ControlFlowGraph;
+import IR.CFG.DominatorTree;
+import IR.Context.CompilationContext;
 import IR.Instruction.*;
-
+import IR.Pass.Analyses;
+import IR.Pass.AnalysisManager;
+import IR.Search.ConstantPool;
+import IR.Search.PersistentIntMap;
+import IR.Search.ValueTable;
+import frontend.IdentifierTable;
+import trace.TraceLevel;
+import trace.Tracer;
+
+import java.io.PrintStream;
 import java.util.*;
 
 /** This is a dynamic data structure made up of doubly linked Basic Blocks, and is the SSA Intermediate Representation. */
 public class SSAIR
 {
-    private static ArrayList<Instruction> instrInGeneratedOrder;  // <- for propogating phi's in while CFG
+    private CompilationContext context;           // <- compile state this CFG allocates in: instructions, blocks, ids, output
     private final BasicBlock headBlock;
+    private final List<BasicBlock> blocks;        // <- every block of this CFG, in generated order
+    private final ConstantPool constants;         // <- constants of headBlock by value
     private BasicBlock currentBlock;
+    private int openLoops;                        // <- while-structures whose body is still being parsed
+    private BitSet assignedInOpenLoops;           // <- identifiers assigned in the outermost open while-structure
 
     private final HashMap<Integer, List<Integer>> commonSubexpr;
     private final HashSet<Integer> uninitializedVarErrors;
+    private final Tracer tracer;
+
+    private final AnalysisManager analyses;       // <- cached analyses of this CFG, used by passes
+    private final IdentityHashMap<Instruction, Instruction> replacedBy;  // <- value replacements made by passes
 
     /** initialize headBlock to empty block used to store constants. */
-    public SSAIR() {
+    public SSAIR(CompilationContext context) {
+        this.context = context;
+        this.tracer = context.getTracer();
         commonSubexpr = new HashMap<>();
         uninitializedVarErrors = new HashSet<>();
+        constants = new ConstantPool();
+        analyses = new AnalysisManager(this, context.getDefinitionClock());
+        replacedBy = new IdentityHashMap<>();
 
-        instrInGeneratedOrder = new ArrayList<>();
-        instrInGeneratedOrder.add(null);
-        headBlock = new BasicBlock(BasicBlock.BlockType.BASIC);     // headBlock stores constants
+        blocks = new ArrayList<>();
+        headBlock = newBlock(BasicBlock.BlockType.BASIC);     // headBlock stores constants
         currentBlock = headBlock;
     }
 
 
             // ------------------------- CFG GENERATION METHODS --------------------------- //
 
+    /** called when the forked context this SSAIR was built in is joined into context: instructions created from now
+     *  on (by passes) belong to context */
+    public void joinedInto(CompilationContext context) {
+        this.context = context;
+    }
+
     public BasicBlock getCurrentBlock() {
         return currentBlock;
     }
@@ -38,9 +68,16 @@ public class SSAIR
         this.currentBlock = target;
     }
 
+    /** a new block of this CFG */
+    private BasicBlock newBlock(BasicBlock.BlockType blockType) {
+        BasicBlock block = new BasicBlock(context, blockType);
+        blocks.add(block);
+        return block;
+    }
+
     /** generates new block which directly falls thru from currentBlock. Set currentBlock to new block */
     public BasicBlock generateFallThruBlock(BasicBlock.BlockType blockType) {
-        BasicBlock newBlock = new BasicBlock(blockType);
+        BasicBlock newBlock = newBlock(blockType);
         currentBlock.addDoubleLinkedFallThruTo(newBlock);
         newBlock.inheritOpSearchFrom(currentBlock);
         return newBlock;
@@ -54,19 +91,19 @@ public class SSAIR
         // for nested-if inside while: new join branches back to while-join
         if (currentBlock.getFallThruFrom() != null && currentBlock.getFallThruFrom().isBlockType(BasicBlock.BlockType.WHILE)) {
             outerJoin = currentBlock.getBranchTo();
-            newJoin = new BasicBlock(BasicBlock.BlockType.IF_JOIN);
+            newJoin = newBlock(BasicBlock.BlockType.IF_JOIN);
             newJoin.addDoubleLinkedBranchTo(outerJoin);
             newJoin.addDoubleLinkedBranchFrom(currentBlock);
         } else {
             // for all other cases: nested in if-then, nested in if-else, un-nested
             // when entering IF, the current block ALWAYS has a fallsThru relationship w the outer join if it exists
             outerJoin = currentBlock.getFallThruTo();   // save outer join block (null if not nested)
-            newJoin = new BasicBlock(BasicBlock.BlockType.IF_JOIN);
+            newJoin = newBlock(BasicBlock.BlockType.IF_JOIN);
             newJoin.addDoubleLinkedFallThruTo(outerJoin);
             newJoin.addDoubleLinkedBranchFrom(currentBlock);
         }
         // then block connects the same way for all cases
-        newThenBlock = new BasicBlock(BasicBlock.BlockType.IF_THEN);
+        newThenBlock = newBlock(BasicBlock.BlockType.IF_THEN);
         newThenBlock.addDoubleLinkedFallThruTo(newJoin);
         newThenBlock.addDoubleLinkedFallThruFrom(currentBlock);
 
@@ -86,7 +123,7 @@ public class SSAIR
         join.deleteFallThruWithParent(innerJoin);       // delete fallThru between outerJoin <-> innerJoin
         innerJoin.addDoubleLinkedBranchTo(join);
         // else block branches from current if-block, falls through to join block
-        BasicBlock newElse = new BasicBlock(BasicBlock.BlockType.IF_ELSE);
+        BasicBlock newElse = newBlock(BasicBlock.BlockType.IF_ELSE);
         newElse.addDoubleLinkedBranchFrom(parent);
         newElse.addDoubleLinkedFallThruTo(join);
         newElse.inheritOpSearchFrom(parent);            // inherit opSearch from dominator
@@ -99,8 +136,9 @@ public class SSAIR
     }
 
     /** generate WHILE-CFG. condition gets it own block (since it's also the join block), body and follow blocks are
-     *  both generated here. */
-    public BasicBlock enterWhile() {
+     *  both generated here. assigned holds the identifiers the while-structure assigns (condition and body), an inner
+     *  loop's are a subset of the outer loop's, so only the outermost set is kept. */
+    public BasicBlock enterWhile(BitSet assigned) {
         // save outer block if outer is a while block, save join block if nested in if
         BasicBlock saveOuter = currentBlock.getFallThruFrom();
         BasicBlock saveJoin = currentBlock.getFallThruTo();
@@ -116,11 +154,11 @@ public class SSAIR
             currentBlock.addBlockType(BasicBlock.BlockType.WHILE);  // currentBlock is now of BlockType WHILE
         }
         // generate and link while body
-        BasicBlock whileBody = new BasicBlock(BasicBlock.BlockType.WHILE_BODY);
+        BasicBlock whileBody = newBlock(BasicBlock.BlockType.WHILE_BODY);
         whileBody.addDoubleLinkedFallThruFrom(currentBlock);
         whileBody.addDoubleLinkedBranchTo(currentBlock);
         // generate and link while follow
-        BasicBlock whileFollow = new BasicBlock(BasicBlock.BlockType.WHILE_FOLLOW);
+        BasicBlock whileFollow = newBlock(BasicBlock.BlockType.WHILE_FOLLOW);
         whileFollow.addDoubleLinkedBranchFrom(currentBlock);
         if (nestedInWhile) {
             whileFollow.addDoubleLinkedBranchTo(saveOuter);
@@ -130,29 +168,36 @@ public class SSAIR
         // inherit search data structure
         whileBody.inheritOpSearchFrom(currentBlock);
         whileFollow.inheritOpSearchFrom(currentBlock);
+        if (openLoops++ == 0) {
+            assignedInOpenLoops = assigned;
+        }
         return currentBlock;
     }
 
+    /** called when "od" closes the innermost while-structure */
+    public void exitWhile() {
+        if (--openLoops == 0) {
+            assignedInOpenLoops = null;
+        }
+    }
+
 
         // ------------------------- SSA INSTRUCTION GENERATION METHODS --------------------------- //
 
-    /** searches for and returns constant in headBlock, if not found, insert and return */
+    /** returns constant c from headBlock's constant pool, if not found, append to headBlock and return */
     public Instruction addConstantIfNotExists(int c) {
-        for (Instruction instr : headBlock.getInstructions()) {
-            if ( instr.getClass() == ConstantInstr.class && ((ConstantInstr) instr).getValue() == c ) {
-                return instr;
-            }
+        ConstantInstr res = constants.get(c);
+        if (res == null) {
+            res = new ConstantInstr(context, c);
+            headBlock.insertInstruction(res);
+            constants.add(res);
         }
-        Instruction res = new ConstantInstr(c);
-        headBlock.insertInstruction(res);
-        instrInGeneratedOrder.add(res);
         return res;
     }
 
     /** inserts register instruction into head block. Used for function definitions. */
     public void insertRegisterInstrToHead(RegisterInstr i) {
         headBlock.insertInstruction(i);
-        instrInGeneratedOrder.add(i);
     }
 
     /** add variable declaration to current block's symbol table and initialize to null
@@ -162,15 +207,16 @@ public class SSAIR
         currentBlock.addVarDecl(id);
     }
 
-    /** inserts Instruction into the current block and into list of instrInGeneratedOrder and returns it
+    /** inserts Instruction into the current block and returns it
      *  if instruction has already been computed before, do not insert */
     public Instruction insertInstrToCurrentBlock(Instruction i) {
-        BinaryInstr exactMatch = i.isAddSubDivMul() ? currentBlock.searchExactMatch(i) : null;
-        BinaryInstr referenceMatch = i.isAddSubDivMul() ? currentBlock.searchIfComputed(i) : null;
+        Instruction exactMatch = i.isPureValue() ? currentBlock.searchExactMatch(i) : null;
+        Instruction referenceMatch = i.isPureValue() && exactMatch == null ? currentBlock.searchIfComputed(i) : null;
         /** Instruction i has completely same operands references as an already computed expression, can just eliminate,
          *  guaranteed to never need to get re-activated */
         if ( exactMatch != null) {
-            Instruction.idCounter--;
+            i.dropOperandUses();
+            context.discardLastInstruction();
             return exactMatch;
         }
         /** exists a commonSubexpression, but refers to difference operands, so may need to get reactivated later if
@@ -178,18 +224,40 @@ public class SSAIR
         else if ( referenceMatch != null ) {
             i.setEliminatedBy(referenceMatch.getId());                      // insert i as "invisible" instruction
             currentBlock.insertInstruction(i);  // insert i to currentBlock
-            instrInGeneratedOrder.add(i);
             insertCommonSubexpr(referenceMatch.getId(), i.getId());     // insert into common subexpression map
             return i;
         }
         /** does not have any common subexpression match */
         else {
             currentBlock.insertInstruction(i);
-            instrInGeneratedOrder.add(i);
             return i;
         }
     }
 
+    /** builds binary op(op1, op2) with the given operand identifier references and inserts it into the current block
+     *  (unless it is a common subexpression). Constant operations and identities are simplified to a constant or an
+     *  operand without emitting anything, ADD/MUL chains with literals are reassociated. */
+    public Instruction emitBinary(Instruction.Op op, Instruction op1, Instruction op2, int op1IdRef, int op2IdRef) {
+        Instruction simplified = simplify(op, op1, op2, op1IdRef, op2IdRef);
+        if (simplified != null) {
+            return simplified;
+        }
+        BinaryInstr inner = reassociableInner(op, op1, op2, op1IdRef, op2IdRef);
+        if (inner != null) {
+            Instruction outerConstant = inner == op1 ? op2 : op1;
+            boolean constantIsOp2 = inner.getOp2() instanceof ConstantInstr && inner.getOp2IdReference() == Instruction.NO_REFERENCE;
+            Instruction innerConstant = constantIsOp2 ? inner.getOp2() : inner.getOp1();
+            op1 = constantIsOp2 ? inner.getOp1() : inner.getOp2();
+            op1IdRef = constantIsOp2 ? inner.getOp1IdReference() : inner.getOp2IdReference();
+            op2 = addConstantIfNotExists(fold(op, ((ConstantInstr) innerConstant).getValue(),
+                                                  ((ConstantInstr) outerConstant).getValue()));
+            op2IdRef = Instruction.NO_REFERENCE;
+        }
+        BinaryInstr res = new BinaryInstr(context, op, op1, op2);
+        res.setOpIdReferences(op1IdRef, op2IdRef);
+        return insertInstrToCurrentBlock(res);
+    }
+
     /** given identifier id, returns Instruction value from current block, search method implemented in BasicBlock */
     public Instruction getIdentifierInstruction(int id) {
         return currentBlock.getIdentifierInstruction(id);
@@ -220,7 +288,7 @@ public class SSAIR
                 ((BinaryInstr)joinBlock.getIdentifierInstruction(id)).setOp1(value);
             }
             else {
-                BinaryInstr phi = new BinaryInstr(Instruction.Op.PHI, value, joinBlock.getBranchFrom().getIdentifierInstruction(id));
+                BinaryInstr phi = new BinaryInstr(context, Instruction.Op.PHI, value, joinBlock.getBranchFrom().getIdentifierInstruction(id));
                 phi.setOpIdReferences(id, id);
                 insertPhiToJoinBlock(joinBlock, id, phi);
             }
@@ -244,7 +312,7 @@ public class SSAIR
                 uninitializedVarErrors.remove(id);    // set op2 of existing phi, remove this id from errors list if exists
             }
             else {
-                BinaryInstr phi = new BinaryInstr(Instruction.Op.PHI, currentBlock.getBranchFrom().getIdentifierInstruction(id), value);
+                BinaryInstr phi = new BinaryInstr(context, Instruction.Op.PHI, currentBlock.getBranchFrom().getIdentifierInstruction(id), value);
                 phi.setOpIdReferences(id, id);
                 insertPhiToJoinBlock(joinBlock, id, phi);
             }
@@ -265,7 +333,7 @@ public class SSAIR
             }
             else {
                 Instruction oldValue = joinBlock.getIdentifierInstruction(id);
-                BinaryInstr phi = new BinaryInstr(Instruction.Op.PHI, oldValue, value);
+                BinaryInstr phi = new BinaryInstr(context, Instruction.Op.PHI, oldValue, value);
                 phi.setOpIdReferences(id, id);
                 insertPhiToJoinBlock(joinBlock, id, phi);
                 if (oldValue != null) {
@@ -288,7 +356,6 @@ public class SSAIR
         }
         joinBlock.insertInstruction(phi);           // inserts instr into joinBlock
         joinBlock.setIdentifierToInstr(id, phi);    // adds {id : instr} to joinBlock's symbol table
-        instrInGeneratedOrder.add(phi);
     }
 
     /** when called, currentBlock is always the inner-join block. Takes in an argument parentBlock that is the if-block
@@ -350,7 +417,7 @@ public class SSAIR
                 }
                 else {
                     // while structure nested in else always has an additional empty block from which it falls through
-                    BinaryInstr outerPhi = new BinaryInstr(Instruction.Op.PHI,
+                    BinaryInstr outerPhi = new BinaryInstr(context, Instruction.Op.PHI,
                             parentBlock.getFallThruFrom().getBranchFrom().getIdentifierInstruction(identifierId), innerPhi);
                     outerPhi.setOpIdReferences( ((BinaryInstr)innerPhi).getOp1IdReference(),
                                                 ((BinaryInstr)innerPhi).getOp2IdReference() );
@@ -382,7 +449,7 @@ public class SSAIR
             ((BinaryInstr)outerJoin.getIdentifierInstruction(identifierId)).setOp1(innerPhi);
         }
         else {
-            BinaryInstr outerPhi = new BinaryInstr(Instruction.Op.PHI, innerPhi,
+            BinaryInstr outerPhi = new BinaryInstr(context, Instruction.Op.PHI, innerPhi,
                     outerJoin.getBranchFrom().getIdentifierInstruction(identifierId));
             outerPhi.setOpIdReferences( ((BinaryInstr)innerPhi).getOp1IdReference(),
                                         ((BinaryInstr)innerPhi).getOp2IdReference() );
@@ -401,7 +468,7 @@ public class SSAIR
         else {
             // if this phi does not exist in the outerJoin, that means the then block of the outer-if did not modify it,
             // can just obtain other phi operand from outer-if-block
-            BinaryInstr outerPhi = new BinaryInstr(Instruction.Op.PHI,
+            BinaryInstr outerPhi = new BinaryInstr(context, Instruction.Op.PHI,
                     parentBlock.getBranchFrom().getIdentifierInstruction(identifierId), innerPhi);
             outerPhi.setOpIdReferences( ((BinaryInstr)innerPhi).getOp1IdReference(),
                     ((BinaryInstr)innerPhi).getOp2IdReference() );
@@ -417,7 +484,7 @@ public class SSAIR
         }
         else {
             Instruction oldValue = outerJoin.getIdentifierInstruction(identifierId);
-            BinaryInstr outerPhi = new BinaryInstr(Instruction.Op.PHI, oldValue, innerPhi);
+            BinaryInstr outerPhi = new BinaryInstr(context, Instruction.Op.PHI, oldValue, innerPhi);
             outerPhi.setOpIdReferences( ((BinaryInstr)innerPhi).getOp1IdReference(),
                                         ((BinaryInstr)innerPhi).getOp2IdReference() );
             insertPhiToJoinBlock(outerJoin, identifierId, outerPhi);
@@ -433,15 +500,25 @@ public class SSAIR
     private void propagateWhilePhiDownstream(BasicBlock whileBlock, int identId, Instruction oldValue, Instruction newValue) {
         int start = whileBlock.getFirstNonPhiInstrId(); // first instruction id in whileBlock thats not phi
         int end = newValue.getId();
-        for (int i = start; i < end; i++) {
-            Instruction curr = instrInGeneratedOrder.get(i);
+        // only users of oldValue generated since the while block began can refer to it through the loop, visit them
+        // in generated order (an instruction using oldValue in both operands is listed twice)
+        List<Instruction> users = new ArrayList<>(new LinkedHashSet<>(oldValue.getUsers()));
+        users.sort(Comparator.comparingInt(Instruction::getId));
+        for (Instruction curr : users) {
+            if (curr.getId() < start || curr.getId() >= end) {
+                continue;
+            }
+            int oldKey = ValueTable.valueKey(curr);
+            boolean replaced = false;
             if (curr.isBinary()) {
-                if ( ((BinaryInstr)curr).replaceOperands(identId, oldValue, newValue) ) {
-                    reactivateIfNeeded( (BinaryInstr)curr );
-                }
+                replaced = ((BinaryInstr)curr).replaceOperands(identId, oldValue, newValue);
             }
             else if (curr.isUnary()) {
-                ((UnaryInstr)curr).replaceOperand(identId, oldValue, newValue);
+                replaced = ((UnaryInstr)curr).replaceOperand(identId, oldValue, newValue);
+            }
+            if (replaced && curr.isPureValue()) {
+                whileBlock.valueOperandsChanged(curr, oldKey);
+                reactivateIfNeeded(curr);
             }
         }
     }
@@ -455,9 +532,8 @@ public class SSAIR
      *  In the case of while-follow/if-join, the dummy instr can be deleted later when inserting actual instructions */
     public void setBranchInstr(BasicBlock parent) {
         if (parent.getBranchTo().getInstructions().isEmpty()) {
-            Instruction dummy = new Instruction(Instruction.Op.BRANCH_TO);
+            Instruction dummy = new Instruction(context, Instruction.Op.BRANCH_TO);
             parent.getBranchTo().insertInstruction(dummy);
-            instrInGeneratedOrder.add(dummy);
         }
         ((UnaryInstr)parent.getInstructions().getLast()).setOp( parent.getBranchTo().getFirstInstr() );
     }
@@ -466,13 +542,181 @@ public class SSAIR
     public void addBranchInstr(BasicBlock target) {
         BasicBlock branchTo = target.getBranchTo();
         if (branchTo.isEmpty()) {
-            Instruction dummy = new Instruction(Instruction.Op.BRANCH_TO);
+            Instruction dummy = new Instruction(context, Instruction.Op.BRANCH_TO);
             branchTo.insertInstruction(dummy);
-            instrInGeneratedOrder.add(dummy);
         }
-        Instruction branchInstr = new UnaryInstr(Instruction.Op.BRA, branchTo.getFirstInstr());
+        Instruction branchInstr = new UnaryInstr(context, Instruction.Op.BRA, branchTo.getFirstInstr());
         target.insertInstruction( branchInstr );
-        instrInGeneratedOrder.add(branchInstr);
+    }
+
+    /** rewrites the value users of old to value (null: undefined) and remembers the replacement, so the symbol tables
+     *  can follow it once optimization is done (see rebindSymbolTables) */
+    public void replaceValue(Instruction old, Instruction value) {
+        old.replaceValueUsesWith(value);
+        replacedBy.put(old, value);
+    }
+
+    /** after optimization, points every symbol table entry at the instruction now holding its value: replacements and
+     *  eliminating common subexpressions are followed, an entry whose instruction was removed without a replacement
+     *  (dead or unreachable) is dropped. Uninitialized (null) entries are kept. */
+    public void rebindSymbolTables() {
+        for (BasicBlock block : blocks) {
+            PersistentIntMap<Instruction> table = block.getSymbolTable();
+            PersistentIntMap<Instruction> rebound = PersistentIntMap.empty();
+            boolean changed = false;
+            for (int id : table.keys()) {
+                Instruction value = table.get(id);
+                Instruction current = value;
+                while (current != null) {
+                    if (replacedBy.containsKey(current)) {
+                        current = replacedBy.get(current);
+                    } else if (current.isEliminated()) {
+                        current = current.getEliminator();
+                    } else {
+                        break;
+                    }
+                }
+                boolean removed = current != null && current.getBlockId() == 0;
+                if (!removed) {
+                    rebound = rebound.put(id, current);
+                }
+                changed |= removed || current != value;
+            }
+            if (changed) {
+                block.setSymbolTable(rebound);
+            }
+        }
+    }
+
+    /** removes i from block. Branches to i (the first instruction of block) are moved to the instruction after it, or
+     *  to a dummy BRANCH_TO if block is left empty. A removed constant also leaves the constant pool. */
+    public void removeInstruction(BasicBlock block, Instruction i) {
+        List<Instruction> branches = new ArrayList<>();
+        for (Instruction user : i.getUsers()) {
+            if (user.isBranch()) {
+                branches.add(user);
+            }
+        }
+        block.getInstructions().remove(i);
+        i.setBlockId(0);
+        i.dropOperandUses();
+        if (i instanceof ConstantInstr) {
+            constants.remove((ConstantInstr) i);
+        }
+        if (!branches.isEmpty()) {
+            if (block.isEmpty()) {
+                block.insertInstruction(new Instruction(context, Instruction.Op.BRANCH_TO));
+            }
+            for (Instruction branch : branches) {
+                ((UnaryInstr) branch).setOp(block.getFirstInstr());
+            }
+        }
+    }
+
+
+          // ------------------------------ ALGEBRAIC METHODS -------------------------------- //
+
+    /** for (x op c1) op c2, c2 op (x op c1) etc. with op ADD or MUL, returns the inner (x op c1), null if not
+     *  reassociable. The inner op must be a temporary of the same expression (no identifier reference) and both
+     *  constants literals: a while-phi then rewrites x in the reassociated op exactly as it would in the inner op. */
+    private BinaryInstr reassociableInner(Instruction.Op op, Instruction op1, Instruction op2, int op1IdRef, int op2IdRef) {
+        if (op != Instruction.Op.ADD && op != Instruction.Op.MUL) {
+            return null;
+        }
+        Instruction inner, outerConstant;
+        if (op2 instanceof ConstantInstr && op2IdRef == Instruction.NO_REFERENCE && op1IdRef == Instruction.NO_REFERENCE) {
+            inner = op1;
+            outerConstant = op2;
+        } else if (op1 instanceof ConstantInstr && op1IdRef == Instruction.NO_REFERENCE && op2IdRef == Instruction.NO_REFERENCE) {
+            inner = op2;
+            outerConstant = op1;
+        } else {
+            return null;
+        }
+        if (outerConstant == null || inner == null || inner.getOpType() != op) {
+            return null;
+        }
+        BinaryInstr innerOp = (BinaryInstr) inner;
+        boolean literalOp2 = innerOp.getOp2() instanceof ConstantInstr && innerOp.getOp2IdReference() == Instruction.NO_REFERENCE;
+        boolean literalOp1 = innerOp.getOp1() instanceof ConstantInstr && innerOp.getOp1IdReference() == Instruction.NO_REFERENCE;
+        return literalOp1 || literalOp2 ? innerOp : null;
+    }
+
+    /** value of c1 op c2, with Java int (32-bit wrap-around) arithmetic. c2 is never 0 for DIV. */
+    private static int fold(Instruction.Op op, int c1, int c2) {
+        switch (op) {
+            case ADD:
+                return c1 + c2;
+            case SUB:
+                return c1 - c2;
+            case MUL:
+                return c1 * c2;
+            default:
+                return c1 / c2;
+        }
+    }
+
+    /** returns the constant or operand that op(op1, op2) simplifies to, null if it does not simplify:
+     *      c1 op c2 -> constant (not for division by 0)
+     *      x+0, 0+x, x-0, x*1, 1*x, x/1 -> x
+     *      x*0, 0*x, x-x -> 0
+     *  Inside a while body, an operand read from an identifier the loop assigns may still be rewritten to a loop phi
+     *  when the assignment is parsed, so such an operand is not folded away. Identifiers the loop never assigns fold
+     *  as anywhere else. */
+    private Instruction simplify(Instruction.Op op, Instruction op1, Instruction op2, int op1IdRef, int op2IdRef) {
+        if (op1 == null || op2 == null) {
+            return null;
+        }
+        boolean stable1 = isStable(op1IdRef);
+        boolean stable2 = isStable(op2IdRef);
+        boolean const1 = stable1 && op1 instanceof ConstantInstr;
+        boolean const2 = stable2 && op2 instanceof ConstantInstr;
+        int c1 = const1 ? ((ConstantInstr) op1).getValue() : 0;
+        int c2 = const2 ? ((ConstantInstr) op2).getValue() : 0;
+        if (const1 && const2 && !(op == Instruction.Op.DIV && c2 == 0)) {
+            return addConstantIfNotExists(fold(op, c1, c2));
+        }
+        switch (op) {
+            case ADD:
+                if (const2 && c2 == 0 && stable1) {
+                    return op1;
+                }
+                if (const1 && c1 == 0 && stable2) {
+                    return op2;
+                }
+                break;
+            case SUB:
+                if (const2 && c2 == 0 && stable1) {
+                    return op1;
+                }
+                if (op1 == op2 && (op1IdRef == op2IdRef || stable1 && stable2)) {
+                    return addConstantIfNotExists(0);
+                }
+                break;
+            case MUL:
+                if (const2 && c2 == 1 && stable1) {
+                    return op1;
+                }
+                if (const1 && c1 == 1 && stable2) {
+                    return op2;
+                }
+                if (const1 && c1 == 0 || const2 && c2 == 0) {
+                    return addConstantIfNotExists(0);
+                }
+                break;
+            case DIV:
+                if (const2 && c2 == 1 && stable1) {
+                    return op1;
+                }
+                break;
+        }
+        return null;
+    }
+
+
+    /** false if an operand read from identifier idRef may still be rewritten to a loop phi of an open while-structure */
+    private boolean isStable(int idRef) {
+        return idRef == Instruction.NO_REFERENCE || openLoops == 0 || !assignedInOpenLoops.get(idRef);
     }
 
 
@@ -491,13 +735,13 @@ public class SSAIR
     }
 
     /** called when instruction i's operands are modified, check if any instruction needs to be re-activated */
-    private void reactivateIfNeeded(BinaryInstr instr) {
+    private void reactivateIfNeeded(Instruction instr) {
         // only activate first one, and insert it as the key, it is now the eliminating common subexpression, if its
         // value is empty, can just eliminate
         if (commonSubexpr.containsKey(instr.getId())) {
             List<Integer> eliminated = commonSubexpr.get(instr.getId());
             int activate = eliminated.get(0);
-            instrInGeneratedOrder.get(activate).activate();     // activate the first, and set it as the new common subexpr
+            context.getInstruction(activate).activate();     // activate the first, and set it as the new common subexpr
             if (eliminated.size() > 1) {
                 eliminated.remove(0);
                 commonSubexpr.put(activate, eliminated);
@@ -507,7 +751,9 @@ public class SSAIR
         }
         // if an eliminated instr has its operands changed, before activating it, remove it commonSubexpr map
         if (instr.isEliminated()) {
-            System.out.printf("re-activated instr %d\n", instr.getId());
+            if (tracer.isEnabled(TraceLevel.DEBUG)) {
+                tracer.trace(TraceLevel.DEBUG, "re-activated instr", String.valueOf(instr.getId()));
+            }
             List<Integer> eliminated = commonSubexpr.get(instr.getEliminatedBy());
             for (int i = 0; i < eliminated.size(); i++) {
                 if (eliminated.get(i) == instr.getId()) {
@@ -515,6 +761,9 @@ public class SSAIR
                     break;
                 }
             }
+            if (eliminated.isEmpty()) {
+                commonSubexpr.remove(instr.getEliminatedBy());     // no longer eliminates anything
+            }
             instr.activate();
         }
     }
@@ -522,113 +771,111 @@ public class SSAIR
     /** given list of instruction ids, update all instructions to be eliminated by the given newVal */
     private void updateEliminatedBy(List<Integer> eliminated, int newVal) {
         for (int i : eliminated) {
-            instrInGeneratedOrder.get(i).setEliminatedBy(newVal);
+            context.getInstruction(i).setEliminatedBy(newVal);
         }
     }
 
-    /** called at the end of computation() to replace all occurrences of eliminated instructions with the common subexpr
-     *  that eliminated it */
-    public void propagateCommonSubexpr() {
-        HashMap<Integer, Integer> replaceMap = new HashMap<>();     // contains all instruction id's that should get replaced
-        for (int i = 1; i < instrInGeneratedOrder.size(); i++) {
-            Instruction instr = instrInGeneratedOrder.get(i);
-            if (instr.isEliminated()) {
-                replaceMap.put(instr.getId(), instr.getEliminatedBy());
-            }
-            checkOperands(instr, replaceMap);
-        }
+    /** returns true if there exists any uninitialized var errors */
+    public boolean error() {
+        return !uninitializedVarErrors.isEmpty();
     }
 
-    /** checks operands of given instruction i to see if any match the instructions that need to be replaced */
-    private void checkOperands(Instruction i, HashMap<Integer, Integer> replaceMap) {
-        if (i.isBinary() && !((BinaryInstr)i).hasNullOperands()) {
-            Instruction op1 = ((BinaryInstr)i).getOp1();
-            Instruction op2 = ((BinaryInstr)i).getOp2();
-            if (replaceMap.containsKey(op1.getId())) {
-                ((BinaryInstr)i).setOp1( instrInGeneratedOrder.get(replaceMap.get(op1.getId())) );
-            }
-            if (replaceMap.containsKey(op2.getId())) {
-                ((BinaryInstr)i).setOp2( instrInGeneratedOrder.get(replaceMap.get(op2.getId())) );
-            }
-        }
-        else if (i.isUnary() && ((UnaryInstr)i).getOp() != null) {
-            Instruction op = ((UnaryInstr)i).getOp();
-            if (replaceMap.containsKey(op.getId())) {
-                ((UnaryInstr)i).setOp( instrInGeneratedOrder.get(replaceMap.get(op.getId())) );
-            }
-        }
+
+          // ------------------------- ANALYSIS METHODS --------------------------- //
+
+    public BasicBlock getHeadBlock() {
+        return headBlock;
     }
 
-    /** returns true if there exists any uninitialized var errors */
-    public boolean error() {
-        return !uninitializedVarErrors.isEmpty();
+    /** cache of the analyses of this CFG, shared by the passes run on it */
+    public AnalysisManager getAnalyses() {
+        return analyses;
+    }
+
+    /** every block of this CFG, reachable or not, in generated order */
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    /** removes unreachable blocks from this CFG and the block registry, their edges must already be unlinked */
+    public void removeBlocks(Collection<BasicBlock> removed) {
+        blocks.removeAll(removed);
+        context.removeBlocks(removed);
+    }
+
+    /** edge-list view of the blocks reachable from headBlock, cached until a block link changes */
+    public ControlFlowGraph getControlFlowGraph() {
+        return analyses.get(Analyses.CONTROL_FLOW_GRAPH);
+    }
+
+    /** dominator tree and dominance frontiers of getControlFlowGraph(), cached along with it */
+    public DominatorTree getDominatorTree() {
+        return analyses.get(Analyses.DOMINATOR_TREE);
     }
 
 
           // ------------------------- VISUALIZATION METHODS --------------------------- //
 
-    private String getIdentifierName(int id, Map<String, Integer> lexerMap) {
-        for (Map.Entry<String, Integer> set : lexerMap.entrySet()) {
-            if (set.getValue() == id) {
-                return set.getKey();
-            }
-        }
-        return "Not Found";
+    private String getIdentifierName(int id, IdentifierTable identifiers) {
+        String name = identifiers.name(id);
+        return name != null ? name : "Not Found";
     }
 
-    private String symbolTableToString(Map<Integer, Instruction> symbolTable, Map<String, Integer> lexerMap) {
+    private String symbolTableToString(PersistentIntMap<Instruction> symbolTable, IdentifierTable identifiers) {
         ArrayList<String> idStrs = new ArrayList<>();
-        for (Map.Entry<Integer, Instruction> set : symbolTable.entrySet()) {
-            if (set.getValue() == null) {
-                idStrs.add(String.format("%s = null", getIdentifierName(set.getKey(), lexerMap)));
+        for (int id : symbolTable.keys()) {
+            Instruction value = symbolTable.get(id);
+            if (value == null) {
+                idStrs.add(String.format("%s = null", getIdentifierName(id, identifiers)));
             }
             else {
-                idStrs.add(String.format("%s = (%d)", getIdentifierName(set.getKey(), lexerMap), set.getValue().getId()));
+                idStrs.add(String.format("%s = (%d)", getIdentifierName(id, identifiers), value.getId()));
             }
         }
         return String.join("|", idStrs);
     }
 
-    public void printCFG(Map<String, Integer> lexerMap, boolean showSymbolTable) {
-        System.out.println("\n---------------- CFG ---------------");
+    public void printCFG(IdentifierTable identifiers, boolean showSymbolTable) {
+        PrintStream out = context.getOut();
+        out.println("\n---------------- CFG ---------------");
         // generate blocks
-        for (BasicBlock block : BasicBlock.allBlocks) {
+        for (BasicBlock block : context.getAllBlocks()) {
             ArrayList<String> instrStrs = new ArrayList<>();
             for (Instruction i : block.getInstructions()) {
                 instrStrs.add(i.toString());
             }
             String blockContent = String.join("|", instrStrs);
-            System.out.printf("bb%d [shape=record, label=\"<b>BB%d | {%s}\"];\n",
+            out.printf("bb%d [shape=record, label=\"<b>BB%d | {%s}\"];\n",
                     block.getBlockId(), block.getBlockId(), blockContent);
         }
-        System.out.println();
+        out.println();
         // printing block fallThruTo/branchTo relationships
-        for (BasicBlock block : BasicBlock.allBlocks) {
+        for (BasicBlock block : context.getAllBlocks()) {
             if (block.getFallThruTo() != null) {
-                System.out.printf("bb%d:s -> bb%d:n [label=\"fallthroughTo\"];\n", block.getBlockId(), block.getFallThruTo().getBlockId());
+                out.printf("bb%d:s -> bb%d:n [label=\"fallthroughTo\"];\n", block.getBlockId(), block.getFallThruTo().getBlockId());
             }
             if (block.getBranchTo() != null) {
-                System.out.printf("bb%d:s -> bb%d:n [label=\"branchTo\"];\n", block.getBlockId(), block.getBranchTo().getBlockId());
+                out.printf("bb%d:s -> bb%d:n [label=\"branchTo\"];\n", block.getBlockId(), block.getBranchTo().getBlockId());
             }
         }
-        System.out.println();
+        out.println();
         // generate symbol tables
         if (showSymbolTable) {
-            for (BasicBlock block : BasicBlock.allBlocks) {
+            for (BasicBlock block : context.getAllBlocks()) {
                 if (!block.getSymbolTable().isEmpty()) {
-                    System.out.printf("st%d [shape=record, label=\"<b>ST%d | {%s}\"];\n", block.getBlockId(), block.getBlockId(),
-                            symbolTableToString(block.getSymbolTable(), lexerMap));
+                    out.printf("st%d [shape=record, label=\"<b>ST%d | {%s}\"];\n", block.getBlockId(), block.getBlockId(),
+                            symbolTableToString(block.getSymbolTable(), identifiers));
                 }
             }
-            System.out.println();
+            out.println();
             // link symbol tables w blocks
-            for (BasicBlock block : BasicBlock.allBlocks) {
+            for (BasicBlock block : context.getAllBlocks()) {
                 if (!block.getSymbolTable().isEmpty()) {
-                    System.out.printf("bb%d:e -> st%d:w [color=blue];\n", block.getBlockId(), block.getBlockId());
+                    out.printf("bb%d:e -> st%d:w [color=blue];\n", block.getBlockId(), block.getBlockId());
                 }
             }
         }
-//        for (BasicBlock block : BasicBlock.allBlocks) {
+//        for (BasicBlock block : context.getAllBlocks()) {
 //            if (block.getFallThruFrom() != null) {
 //                System.out.printf("bb%d:s -> bb%d:n [label=\"fallthroughFrom\"];\n", block.getBlockId(), block.getFallThruFrom().getBlockId());
 //            }
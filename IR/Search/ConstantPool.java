@@ -0,0 +1,76 @@
+package IR.Search;
+
+import IR.Instruction.ConstantInstr;
+
+/** The constant pool of one SSAIR: constant values mapped to the ConstantInstr that holds them in the head block.
+ *  Open-addressing hash table over primitive int keys, so interning a literal is O(1) and never boxes the value. */
+public class ConstantPool {
+
+    private int[] values = new int[16];
+    private ConstantInstr[] constants = new ConstantInstr[16];     // null marks an empty slot
+    private int size = 0;
+
+    /** returns the ConstantInstr holding value, null if the value has not been added */
+    public ConstantInstr get(int value) {
+        return constants[findSlot(value)];
+    }
+
+    /** adds constant to the pool, keyed by its value */
+    public void add(ConstantInstr constant) {
+        int slot = findSlot(constant.getValue());
+        if (constants[slot] == null) {
+            size++;
+        }
+        values[slot] = constant.getValue();
+        constants[slot] = constant;
+        if (size * 2 > constants.length) {
+            rehash();
+        }
+    }
+
+    /** removes constant from the pool if it is the one pooled for its value, for a constant removed from the IR */
+    public void remove(ConstantInstr constant) {
+        int slot = findSlot(constant.getValue());
+        if (constants[slot] != constant) {
+            return;
+        }
+        constants[slot] = null;
+        size--;
+        // re-insert the rest of the probe run, so no lookup stops early at the emptied slot
+        int mask = constants.length - 1;
+        for (int next = (slot + 1) & mask; constants[next] != null; next = (next + 1) & mask) {
+            ConstantInstr moved = constants[next];
+            constants[next] = null;
+            int target = findSlot(moved.getValue());
+            values[target] = moved.getValue();
+            constants[target] = moved;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** linear probe for the slot holding value, or the empty slot it would go in */
+    private int findSlot(int value) {
+        int mask = constants.length - 1;
+        int slot = (value * 0x9E3779B9 >>> 16) & mask;
+        while (constants[slot] != null && values[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        ConstantInstr[] old = constants;
+        values = new int[old.length * 2];
+        constants = new ConstantInstr[old.length * 2];
+        for (ConstantInstr constant : old) {
+            if (constant != null) {
+                int slot = findSlot(constant.getValue());
+                values[slot] = constant.getValue();
+                constants[slot] = constant;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package IR.Search;
+
+import IR.Instruction.Instruction;
+
+import java.util.Arrays;
+
+/** Memo of one block's upstream variable lookups (BasicBlock.getIdentifierInstruction): identifier id mapped to the
+ *  definition found upstream, so a repeated lookup does not walk the CFG again.
+ *
+ *  INVALIDATION:   every entry is stamped with the time of a Clock shared by all blocks of a compile. An entry is valid
+ *                  only if neither its identifier was written (assign, phi insertion, var decl) nor the CFG shape
+ *                  changed (links, block types, complete tables) anywhere since it was stamped.
+ *
+ *  Open-addressing table over primitive int keys, 0 marks an empty slot (identifier ids start at 1). Ids below 1 are
+ *  never memoized.
+ *  */
+public class DefinitionCache {
+
+    private final Clock clock;
+    private int[] ids = new int[8];
+    private Instruction[] definitions = new Instruction[8];
+    private int[] times = new int[8];
+    private int size = 0;
+
+    public DefinitionCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /** slot of a valid definition of id, -1 if there is none */
+    public int find(int id) {
+        if (id < 1) {
+            return -1;
+        }
+        int slot = findSlot(id);
+        return ids[slot] == id && clock.isValid(id, times[slot]) ? slot : -1;
+    }
+
+    /** the definition in slot, may be null for a declared but uninitialized variable */
+    public Instruction definitionAt(int slot) {
+        return definitions[slot];
+    }
+
+    /** memoizes definition as the current upstream definition of id */
+    public void put(int id, Instruction definition) {
+        if (id < 1) {
+            return;
+        }
+        int slot = findSlot(id);
+        if (ids[slot] == 0) {
+            size++;
+        }
+        ids[slot] = id;
+        definitions[slot] = definition;
+        times[slot] = clock.now();
+        if (size * 2 > ids.length) {
+            rehash();
+        }
+    }
+
+    /** linear probe for the slot holding id, or the empty slot it would go in */
+    private int findSlot(int id) {
+        int mask = ids.length - 1;
+        int slot = (id * 0x9E3779B9 >>> 16) & mask;
+        while (ids[slot] != 0 && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldIds = ids;
+        Instruction[] oldDefinitions = definitions;
+        int[] oldTimes = times;
+        ids = new int[oldIds.length * 2];
+        definitions = new Instruction[oldIds.length * 2];
+        times = new int[oldIds.length * 2];
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != 0) {
+                int slot = findSlot(oldIds[i]);
+                ids[slot] = oldIds[i];
+                definitions[slot] = oldDefinitions[i];
+                times[slot] = oldTimes[i];
+            }
+        }
+    }
+
+    /** logical time of a compile's symbol tables and CFG shape, shared by the DefinitionCaches of all its blocks (and
+     *  used to tell whether a cached CFG analysis is still current) */
+    public static class Clock {
+        private int now = 0;
+        private int shapeChanged = 0;               // time of the last CFG shape change
+        private int[] written = new int[64];        // identifier id -> time of its last write
+
+        public int now() {
+            return now;
+        }
+
+        /** id was (re)defined in some block's symbol table */
+        public void identifierWritten(int id) {
+            if (id < 1) {
+                return;
+            }
+            if (id >= written.length) {
+                written = Arrays.copyOf(written, Math.max(written.length * 2, id + 1));
+            }
+            written[id] = ++now;
+        }
+
+        /** a block link, block type or whole symbol table changed, every memoized lookup may be stale */
+        public void shapeChanged() {
+            shapeChanged = ++now;
+        }
+
+        /** time of the last CFG shape change, anything derived from the CFG shape before it is stale */
+        public int shapeChangedAt() {
+            return shapeChanged;
+        }
+
+        boolean isValid(int id, int time) {
+            return time >= shapeChanged && (id >= written.length || time >= written[id]);
+        }
+    }
+}
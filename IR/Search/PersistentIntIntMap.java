@@ -0,0 +1,190 @@
+package IR.Search;
+
+/** Immutable int-to-int map with structural sharing, the primitive-valued sibling of PersistentIntMap (same hash array
+ *  mapped trie and key hash). Neither keys nor values are boxed, an absent key reads as NO_VALUE. put() and remove()
+ *  return a new map that shares all untouched nodes with the old one. */
+public final class PersistentIntIntMap {
+
+    /** returned by get() for an absent key, so it cannot be stored as a value */
+    public static final int NO_VALUE = -1;
+
+    private static final PersistentIntIntMap EMPTY = new PersistentIntIntMap(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentIntIntMap empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** returns the value mapped to key, NO_VALUE if absent */
+    public int get(int key) {
+        Entry entry = find(key);
+        return entry != null ? entry.value : NO_VALUE;
+    }
+
+    /** returns a map with key mapped to value, this map is unchanged */
+    public PersistentIntIntMap put(int key, int value) {
+        if (value == NO_VALUE) {
+            throw new IllegalArgumentException("NO_VALUE cannot be stored");
+        }
+        Entry existing = find(key);
+        if (existing != null && existing.value == value) {
+            return this;
+        }
+        Node newRoot = root == null ? new Node(0, new Object[0]) : root;
+        return new PersistentIntIntMap(put(newRoot, 0, hash(key), new Entry(key, value)),
+                                       existing != null ? size : size + 1);
+    }
+
+    /** returns a map without key, this map if key is absent */
+    public PersistentIntIntMap remove(int key) {
+        if (find(key) == null) {
+            return this;
+        }
+        return size == 1 ? EMPTY : new PersistentIntIntMap(remove(root, 0, hash(key)), size - 1);
+    }
+
+    /** returns a map with every entry of other added, other's value wins for a key in both maps. Costs one put per
+     *  entry of other, this map's entries are shared. */
+    public PersistentIntIntMap putAll(PersistentIntIntMap other) {
+        if (isEmpty()) {
+            return other;
+        }
+        PersistentIntIntMap result = this;
+        if (other.root != null) {
+            result = putAll(result, other.root);
+        }
+        return result;
+    }
+
+    // ---------------------- TRIE ------------------------ //
+
+    private static final class Entry {
+        final int key;
+        final int value;
+
+        Entry(int key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** bitmap-indexed node, slots holds only the present children (Entry or Node) in bit order */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    // odd multiplier, so the hash is a bijection on int
+    private static int hash(int key) {
+        return key * 0x9E3779B9;
+    }
+
+    private Entry find(int key) {
+        int h = hash(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += 5) {
+            int bit = 1 << ((h >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Entry) {
+                return ((Entry) slot).key == key ? (Entry) slot : null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    private static Node put(Node node, int shift, int h, Entry entry) {
+        int bit = 1 << ((h >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = entry;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = put((Node) slot, shift + 5, h, entry);
+        } else if (((Entry) slot).key == entry.key) {
+            replacement = entry;
+        } else {
+            replacement = merge((Entry) slot, entry, h, shift + 5);
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /** node holding two entries whose hashes agree below shift */
+    private static Node merge(Entry a, Entry b, int hb, int shift) {
+        int ha = hash(a.key);
+        int bitA = 1 << ((ha >>> shift) & 31);
+        int bitB = 1 << ((hb >>> shift) & 31);
+        if (bitA == bitB) {
+            return new Node(bitA, new Object[] { merge(a, b, hb, shift + 5) });
+        }
+        Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+        return new Node(bitA | bitB, slots);
+    }
+
+    /** node without the entry of hash h, which is known to be present. null if the node is left empty, a node left
+     *  with a single entry is replaced by that entry one level up */
+    private static Node remove(Node node, int shift, int h) {
+        int bit = 1 << ((h >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+        Object replacement = null;
+        if (slot instanceof Node) {
+            Node child = remove((Node) slot, shift + 5, h);
+            replacement = child != null && child.slots.length == 1 && child.slots[0] instanceof Entry ? child.slots[0] : child;
+        }
+        if (replacement != null) {
+            Object[] slots = node.slots.clone();
+            slots[index] = replacement;
+            return new Node(node.bitmap, slots);
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    private static PersistentIntIntMap putAll(PersistentIntIntMap map, Node node) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Entry) {
+                map = map.put(((Entry) slot).key, ((Entry) slot).value);
+            } else {
+                map = putAll(map, (Node) slot);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,202 @@
+package IR.Search;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/** Immutable int-keyed map with structural sharing (a hash array mapped trie). put() returns a new map that shares all
+ *  untouched nodes with the old one, so handing a map to another block is O(1) and an update is O(log32 n).
+ *  Keys are scrambled by a bijective hash, so two distinct keys always separate within the 7 levels of the trie and no
+ *  collision nodes are needed. Keys are never boxed. */
+public final class PersistentIntMap<V> {
+
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) != null;
+    }
+
+    /** returns the value mapped to key, null if absent (or mapped to null) */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Entry entry = find(key);
+        return entry != null ? (V) entry.value : null;
+    }
+
+    /** returns a map with key mapped to value, this map is unchanged */
+    public PersistentIntMap<V> put(int key, V value) {
+        Entry existing = find(key);
+        if (existing != null && existing.value == value) {
+            return this;
+        }
+        Node newRoot = root == null ? new Node(0, new Object[0]) : root;
+        return new PersistentIntMap<>(put(newRoot, 0, hash(key), new Entry(key, value)),
+                                      existing != null ? size : size + 1);
+    }
+
+    /** returns a map with every entry of other added, other's value wins for a key in both maps. Costs one put per
+     *  entry of other, this map's entries are shared. */
+    public PersistentIntMap<V> putAll(PersistentIntMap<V> other) {
+        if (isEmpty()) {
+            return other;
+        }
+        PersistentIntMap<V> result = this;
+        if (other.root != null) {
+            result = putAll(result, other.root);
+        }
+        return result;
+    }
+
+    /** keys of this map in ascending order */
+    public int[] keys() {
+        int[] keys = new int[size];
+        if (root != null) {
+            collectKeys(root, keys, 0);
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /** calls action on every key and value, in no particular order */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Integer, V> action) {
+        if (root != null) {
+            forEach(root, (BiConsumer<Integer, Object>) action);
+        }
+    }
+
+    // ---------------------- TRIE ------------------------ //
+
+    private static final class Entry {
+        final int key;
+        final Object value;
+
+        Entry(int key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** bitmap-indexed node, slots holds only the present children (Entry or Node) in bit order */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    // odd multiplier, so the hash is a bijection on int
+    private static int hash(int key) {
+        return key * 0x9E3779B9;
+    }
+
+    private Entry find(int key) {
+        int h = hash(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += 5) {
+            int bit = 1 << ((h >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Entry) {
+                return ((Entry) slot).key == key ? (Entry) slot : null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    private static Node put(Node node, int shift, int h, Entry entry) {
+        int bit = 1 << ((h >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = entry;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = put((Node) slot, shift + 5, h, entry);
+        } else if (((Entry) slot).key == entry.key) {
+            replacement = entry;
+        } else {
+            replacement = merge((Entry) slot, entry, h, shift + 5);
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /** node holding two entries whose hashes agree below shift */
+    private static Node merge(Entry a, Entry b, int hb, int shift) {
+        int ha = hash(a.key);
+        int bitA = 1 << ((ha >>> shift) & 31);
+        int bitB = 1 << ((hb >>> shift) & 31);
+        if (bitA == bitB) {
+            return new Node(bitA, new Object[] { merge(a, b, hb, shift + 5) });
+        }
+        Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+        return new Node(bitA | bitB, slots);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> PersistentIntMap<V> putAll(PersistentIntMap<V> map, Node node) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Entry) {
+                map = map.put(((Entry) slot).key, (V) ((Entry) slot).value);
+            } else {
+                map = putAll(map, (Node) slot);
+            }
+        }
+        return map;
+    }
+
+    /** writes the keys under node into keys from index on, returns the index after the last one written */
+    private static int collectKeys(Node node, int[] keys, int index) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Entry) {
+                keys[index++] = ((Entry) slot).key;
+            } else {
+                index = collectKeys((Node) slot, keys, index);
+            }
+        }
+        return index;
+    }
+
+    private static void forEach(Node node, BiConsumer<Integer, Object> action) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Entry) {
+                action.accept(((Entry) slot).key, ((Entry) slot).value);
+            } else {
+                forEach((Node) slot, action);
+            }
+        }
+    }
+}
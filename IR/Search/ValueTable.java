@@ -0,0 +1,152 @@
+package IR.Search;
+
+import IR.Instruction.BinaryInstr;
+import IR.Instruction.Instruction;
+import IR.Instruction.UnaryInstr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/** Scoped value-numbering table used in eliminating common subexpressions. Pure value instructions are hashed by
+ *  (opcode, operand ids). Each block holds a persistent snapshot of its dominator's table plus its own instructions,
+ *  so inheriting a table is O(1) and a lookup is O(1) expected instead of a walk down a per-opcode chain.
+ *
+ *  COMMUTATIVE OPS: operands are ranked by id, so a+b and b+a hash to the same key and match each other. Instructions
+ *                  keep their source operand order.
+ *
+ *  Within a key, instructions are chained most recent first (InstrSearchNode). Keys collide only rarely, every
+ *  candidate is checked against the actual operands.
+ *
+ *  MOVED VALUES:   while-phi propagation rewrites operands of instructions that are already in tables. Those
+ *                  instructions stay chained under the key they were inserted with, and are also indexed under their
+ *                  current key in an index shared by all tables of one SSAIR. A moved instruction is visible from a block
+ *                  only if that block's snapshot holds it under its original key.
+ *  */
+public class ValueTable {
+
+    private PersistentIntMap<InstrSearchNode> values;
+    private MovedValues moved;
+
+    public ValueTable() {
+        values = PersistentIntMap.empty();
+        moved = new MovedValues();
+    }
+
+    /** shares the dominator's table, instructions added to either table afterwards are not visible to the other */
+    public void inherit(ValueTable dom) {
+        values = dom.values;
+        moved = dom.moved;
+    }
+
+    /** Two computations are Common subexpression if they have same OpType and same operands
+     *  returns the most recent non-eliminated instruction that has already been computed */
+    public Instruction searchIfComputed(Instruction instr) {
+        return search(instr, false);
+    }
+
+    /** searches for exact match: same operands and same operand references (eliminated instructions included) */
+    public Instruction searchExactMatch(Instruction instr) {
+        return search(instr, true);
+    }
+
+    /** adds given instruction into the front of its key's chain */
+    public void addInstruction(Instruction instr) {
+        int key = valueKey(instr);
+        values = values.put(key, new InstrSearchNode(instr, values.get(key)));
+    }
+
+    /** called after the operands of instr were replaced, oldKey is valueKey(instr) from before the replacement */
+    public void operandsChanged(Instruction instr, int oldKey) {
+        moved.move(instr, oldKey, valueKey(instr));
+    }
+
+    /** hash of the opcode and current operand ids of a pure value instruction */
+    public static int valueKey(Instruction instr) {
+        int h = instr.getOpType().ordinal();
+        if (instr instanceof BinaryInstr) {
+            int id1 = ((BinaryInstr) instr).getOp1Id();
+            int id2 = ((BinaryInstr) instr).getOp2Id();
+            if (instr.isCommutative() && id2 < id1) {      // canonical order: lower rank first
+                int swap = id1;
+                id1 = id2;
+                id2 = swap;
+            }
+            h = 31 * h + id1;
+            h = 31 * h + id2;
+        } else if (instr instanceof UnaryInstr) {
+            h = 31 * h + ((UnaryInstr) instr).getOpId();
+        }
+        return h;
+    }
+
+    private Instruction search(Instruction instr, boolean exact) {
+        int key = valueKey(instr);
+        Instruction best = null;
+        for (InstrSearchNode current = values.get(key); current != null; current = current.getNext()) {
+            if (matches(current.getInstr(), instr, exact)) {
+                best = current.getInstr();      // most recent of this chain
+                break;
+            }
+        }
+        for (Instruction candidate : moved.at(key)) {
+            if ((best == null || candidate.getId() > best.getId()) && matches(candidate, instr, exact) &&
+                    holds(moved.originalKey(candidate), candidate)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    // don't want to find a computed match that's also eliminated. if there exists a match that's eliminated, that means
+    // there exists another match that's not eliminated (the one that matched with the match that's eliminated)
+    private static boolean matches(Instruction candidate, Instruction instr, boolean exact) {
+        if (candidate.getOpType() != instr.getOpType()) {
+            return false;
+        }
+        if (candidate instanceof BinaryInstr) {
+            BinaryInstr c = (BinaryInstr) candidate, i = (BinaryInstr) instr;
+            return exact ? c.sameOperandIdAndRefs(i) : c.sameOperandIds(i) && !c.isEliminated();
+        }
+        UnaryInstr c = (UnaryInstr) candidate, i = (UnaryInstr) instr;
+        return exact ? c.sameOperandIdAndRef(i) : c.sameOperandId(i) && !c.isEliminated();
+    }
+
+    /** true if this table's snapshot chains instr under key */
+    private boolean holds(int key, Instruction instr) {
+        for (InstrSearchNode current = values.get(key); current != null; current = current.getNext()) {
+            if (current.getInstr() == instr) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** index of table members whose operands changed, shared by all tables inherited from the same root table */
+    private static class MovedValues {
+        private final HashMap<Integer, List<Instruction>> byKey = new HashMap<>();
+        private final IdentityHashMap<Instruction, Integer> originalKeys = new IdentityHashMap<>();
+
+        void move(Instruction instr, int oldKey, int newKey) {
+            if (oldKey == newKey) {
+                return;
+            }
+            Integer original = originalKeys.get(instr);
+            if (original == null) {
+                originalKeys.put(instr, oldKey);
+            } else {
+                byKey.get(oldKey).remove(instr);
+            }
+            byKey.computeIfAbsent(newKey, k -> new ArrayList<>()).add(instr);
+        }
+
+        List<Instruction> at(int key) {
+            return byKey.getOrDefault(key, List.of());
+        }
+
+        int originalKey(Instruction instr) {
+            return originalKeys.get(instr);
+        }
+    }
+}
@@ -1,15 +1,55 @@
+import IR.Context.CompilationContext;
+import driver.BatchCompiler;
+import driver.CompileServer;
 import frontend.Lexer;
 import frontend.Parser;
+import trace.Tracer;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/** every compile gets its own CompilationContext, so Compile() is reentrant and can run on several threads at once */
 public class TinyCompiler {
 
     public static void Compile(String fileName) {
-        Lexer lexer = new Lexer(fileName);
-        Parser parser = new Parser(lexer);
-        parser.parse();
+        Compile(fileName, Tracer.off());
+    }
+
+    public static void Compile(String fileName, Tracer tracer) {
+        Compile(fileName, tracer, null);
+    }
+
+    /** functionExecutor, if not null, builds the program's function declarations in parallel */
+    public static void Compile(String fileName, Tracer tracer, ExecutorService functionExecutor) {
+        try (CompilationContext context = new CompilationContext(tracer)) {
+            Lexer lexer = new Lexer(fileName);
+            Parser parser = new Parser(lexer, context);
+            parser.setFunctionExecutor(functionExecutor);
+            parser.parse();
+        }
     }
 
-    public static void main(String[] args) {
-        TinyCompiler.Compile("tests/CSE/tricky/tricky.tiny");
+    /** --server <port|unix:path>: runs a persistent compile server (see driver.CompileServer)
+     *  --check-parallel-functions <dirs/globs>: compiles every file serially and with parallel function declarations,
+     *  exits with status 1 if any output differs
+     *  [--parallel-functions] <dirs/globs>: batch-compiles every .tiny file under the given directories/globs in
+     *  parallel, optionally also building each file's function declarations in parallel */
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = Arrays.asList(args);
+        if (args.length == 2 && args[0].equals("--server")) {
+            CompileServer.run(args[1]);
+        } else if (args.length > 1 && args[0].equals("--check-parallel-functions")) {
+            if (BatchCompiler.checkParallelFunctions(arguments.subList(1, args.length), System.out) > 0) {
+                System.exit(1);
+            }
+        } else if (args.length > 1 && args[0].equals("--parallel-functions")) {
+            BatchCompiler.run(arguments.subList(1, args.length), true);
+        } else if (args.length > 0) {
+            BatchCompiler.run(arguments);
+        } else {
+            TinyCompiler.Compile("tests/CSE/tricky/tricky.tiny");
+        }
     }
 }
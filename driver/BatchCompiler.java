@@ -0,0 +1,228 @@
+package driver;
+
+import IR.Context.CompilationContext;
+import frontend.Lexer;
+import frontend.Parser;
+import trace.Tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** BATCH COMPILER
+ *  compiles every .tiny file under the given directories/globs on a work-stealing pool, one CompilationContext per
+ *  file, and collects the per-file output, diagnostics and timings into a single report. Each compile prints into its
+ *  own buffer, so nothing interleaves on the console.
+ *
+ *  usage:  TinyCompiler tests/                     every .tiny file under tests/
+ *          TinyCompiler "tests/SSA/**.tiny"        glob, relative to the working directory
+ *          TinyCompiler --parallel-functions tests/
+ *                                                  also builds each file's function declarations in parallel
+ *          TinyCompiler --check-parallel-functions tests/
+ *                                                  compiles every file serially and with parallel functions and
+ *                                                  reports each file whose output differs
+ *  */
+public class BatchCompiler {
+
+    private final int parallelism;
+    private final ExecutorService functionExecutor;     // null: function declarations are built serially
+
+    public BatchCompiler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchCompiler(int parallelism) {
+        this(parallelism, null);
+    }
+
+    /** functionExecutor, if not null, builds the function declarations of each file in parallel. It must not be the
+     *  pool the files are compiled on, a file's compile blocks until its functions are built. */
+    public BatchCompiler(int parallelism, ExecutorService functionExecutor) {
+        this.parallelism = parallelism;
+        this.functionExecutor = functionExecutor;
+    }
+
+    /** expands directories and globs into the sorted, de-duplicated list of .tiny files they name */
+    public static List<Path> collectSources(List<String> dirsOrGlobs) {
+        TreeSet<Path> sources = new TreeSet<>();
+        for (String arg : dirsOrGlobs) {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                sources.addAll(walk(path, p -> p.toString().endsWith(".tiny")));
+            }
+            else if (Files.isRegularFile(path)) {
+                sources.add(path);
+            }
+            else {
+                PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + arg);
+                Path root = Path.of("");
+                sources.addAll(walk(root, p -> glob.matches(root.toAbsolutePath().relativize(p.toAbsolutePath()))));
+            }
+        }
+        return new ArrayList<>(sources);
+    }
+
+    private static List<Path> walk(Path root, Predicate<Path> filter) {
+        try (Stream<Path> files = Files.walk(root.toAbsolutePath())) {
+            return files.filter(Files::isRegularFile)
+                    .map(p -> Path.of("").toAbsolutePath().relativize(p))
+                    .filter(filter)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** compiles every source concurrently, results are returned in the order of sources */
+    public List<CompileResult> compileAll(List<Path> sources) {
+        ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+        try {
+            List<Callable<CompileResult>> tasks = new ArrayList<>();
+            for (Path source : sources) {
+                tasks.add(() -> compile(source, functionExecutor));
+            }
+            List<CompileResult> results = new ArrayList<>();
+            for (Future<CompileResult> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("batch compile interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("batch compile failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** compiles a single file into its own output buffer */
+    public static CompileResult compile(Path source) {
+        return compile(source, null);
+    }
+
+    /** compiles a single file into its own output buffer, building its functions on functionExecutor if not null */
+    public static CompileResult compile(Path source, ExecutorService functionExecutor) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, false, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        Throwable failure = null;
+        List<String> diagnostics;
+        try (CompilationContext context = new CompilationContext(Tracer.off(), out)) {
+            try {
+                Parser parser = new Parser(new Lexer(source.toString()), context);
+                parser.setFunctionExecutor(functionExecutor);
+                parser.parse();
+            } catch (RuntimeException | StackOverflowError e) {
+                failure = e;
+            }
+            diagnostics = new ArrayList<>(context.getDiagnostics());
+        }
+        long elapsed = System.nanoTime() - start;
+        out.flush();
+        return new CompileResult(source, buffer.toString(StandardCharsets.UTF_8), diagnostics, elapsed, failure);
+    }
+
+    /** one line per file with its status and time, diagnostics indented underneath, then totals */
+    public static void printReport(List<CompileResult> results, long wallNanos, PrintStream out) {
+        int clean = 0, withDiagnostics = 0, failed = 0;
+        long cpuNanos = 0;
+        for (CompileResult result : results) {
+            String status;
+            if (result.getFailure() != null) {
+                status = "FAILED";
+                failed++;
+            } else if (!result.getDiagnostics().isEmpty()) {
+                status = "DIAGNOSTICS";
+                withDiagnostics++;
+            } else {
+                status = "OK";
+                clean++;
+            }
+            cpuNanos += result.getElapsedNanos();
+            out.printf("%-12s %9.3f ms  %s\n", status, result.getElapsedNanos() / 1e6, result.getSource());
+            for (String diagnostic : result.getDiagnostics()) {
+                out.println("             " + diagnostic);
+            }
+            if (result.getFailure() != null) {
+                out.println("             " + result.getFailure());
+            }
+        }
+        CompileResult slowest = results.stream().max(Comparator.comparingLong(CompileResult::getElapsedNanos)).orElse(null);
+        out.printf("\n%d files: %d ok, %d with diagnostics, %d failed\n", results.size(), clean, withDiagnostics, failed);
+        out.printf("wall %.3f ms, summed compile time %.3f ms%s\n", wallNanos / 1e6, cpuNanos / 1e6,
+                slowest == null ? "" : String.format(", slowest %s (%.3f ms)", slowest.getSource(), slowest.getElapsedNanos() / 1e6));
+    }
+
+    /** compiles everything named by args and prints the report to System.out */
+    public static void run(List<String> dirsOrGlobs) {
+        run(dirsOrGlobs, false);
+    }
+
+    /** compiles everything named by args, with parallel function declarations if parallelFunctions, and prints the
+     *  report to System.out */
+    public static void run(List<String> dirsOrGlobs, boolean parallelFunctions) {
+        List<Path> sources = collectSources(dirsOrGlobs);
+        ExecutorService functionExecutor = parallelFunctions ? Executors.newWorkStealingPool() : null;
+        try {
+            long start = System.nanoTime();
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            List<CompileResult> results = new BatchCompiler(parallelism, functionExecutor).compileAll(sources);
+            printReport(results, System.nanoTime() - start, System.out);
+        } finally {
+            if (functionExecutor != null) {
+                functionExecutor.shutdown();
+            }
+        }
+    }
+
+    // ---------------------- PARALLEL FUNCTIONS CHECK ------------------------ //
+
+    /** compiles every file named by args serially and with parallel function declarations, prints one line per file
+     *  and returns the number of files whose output or diagnostics differ */
+    public static int checkParallelFunctions(List<String> dirsOrGlobs, PrintStream out) {
+        List<Path> sources = collectSources(dirsOrGlobs);
+        ExecutorService functionExecutor = Executors.newWorkStealingPool();
+        int different = 0;
+        try {
+            List<CompileResult> serial = new BatchCompiler().compileAll(sources);
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            List<CompileResult> parallel = new BatchCompiler(parallelism, functionExecutor).compileAll(sources);
+            for (int i = 0; i < sources.size(); i++) {
+                boolean same = sameResult(serial.get(i), parallel.get(i));
+                if (!same) {
+                    different++;
+                }
+                out.printf("%-10s %s\n", same ? "SAME" : "DIFFERENT", sources.get(i));
+            }
+        } finally {
+            functionExecutor.shutdown();
+        }
+        out.printf("\n%d files: %d same, %d different\n", sources.size(), sources.size() - different, different);
+        return different;
+    }
+
+    private static boolean sameResult(CompileResult serial, CompileResult parallel) {
+        return serial.getOutput().equals(parallel.getOutput())
+                && serial.getDiagnostics().equals(parallel.getDiagnostics())
+                && String.valueOf(serial.getFailure()).equals(String.valueOf(parallel.getFailure()));
+    }
+}
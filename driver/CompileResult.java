@@ -0,0 +1,46 @@
+package driver;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/** outcome of compiling one .tiny file in a batch: the printed CFG, the diagnostics and the time it took */
+public class CompileResult {
+
+    private final Path source;
+    private final String output;            // everything the compile printed (CFG and diagnostics)
+    private final List<String> diagnostics;
+    private final long elapsedNanos;
+    private final Throwable failure;        // null unless the compiler itself crashed
+
+    public CompileResult(Path source, String output, List<String> diagnostics, long elapsedNanos, Throwable failure) {
+        this.source = source;
+        this.output = output;
+        this.diagnostics = diagnostics;
+        this.elapsedNanos = elapsedNanos;
+        this.failure = failure;
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isClean() {
+        return failure == null && diagnostics.isEmpty();
+    }
+}
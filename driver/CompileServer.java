@@ -0,0 +1,207 @@
+package driver;
+
+import IR.Context.CompilationContext;
+import frontend.Lexer;
+import frontend.Parser;
+import trace.RingBufferTraceSink;
+import trace.TraceLevel;
+import trace.Tracer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** COMPILE SERVER
+ *  long-running compiler on a loopback TCP port or a Unix-domain socket, so the JVM start-up and JIT warm-up are paid
+ *  once instead of per compile. Every connection is served on its own pool thread and may send any number of requests.
+ *
+ *  PROTOCOL (UTF-8, one request header line each):
+ *      PATH <file> [options]                   compile a .tiny file on the server's file system
+ *      SOURCE <bytes> [options]                compile the <bytes> bytes that follow the header line
+ *      PING                                    answered with PONG
+ *      QUIT                                    closes the connection
+ *
+ *  options:    trace=<level>                   stream back the compile's trace at this level
+ *              functions=parallel              build the function declarations in parallel (functions=serial default)
+ *
+ *  a compile streams back its CFG and diagnostics as they are printed, then (with trace=) the trace dump, then a
+ *  terminating line  END <OK|DIAGNOSTICS|FAILED> <milliseconds>
+ *  */
+public class CompileServer {
+
+    private static final int TRACE_CAPACITY = 4096;
+    private static final String WARM_UP_SOURCE =
+            "main var a, b; { let a <- call InputNum(); let b <- a + 1; " +
+            "while a < b do if a > 0 then let a <- a + 1 else let b <- b * 2 fi od; call OutputNum(a + b) }.";
+
+    private final SocketAddress address;
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final ExecutorService functionExecutor = Executors.newWorkStealingPool();   // for functions=parallel
+
+    /** listen on a loopback TCP port */
+    public CompileServer(int port) {
+        this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /** listen on a Unix-domain socket at the given path */
+    public CompileServer(Path socketPath) {
+        this.address = UnixDomainSocketAddress.of(socketPath);
+    }
+
+    /** compiles a small program repeatedly so the lexer, parser and SSA construction are JIT-compiled before the first
+     *  request arrives */
+    public static void warmUp(int rounds) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int i = 0; i < rounds; i++) {
+            try (CompilationContext context = new CompilationContext(Tracer.off(), discard)) {
+                new Parser(Lexer.fromSource(WARM_UP_SOURCE), context).parse();
+            }
+        }
+    }
+
+    /** accepts connections until the thread is interrupted or the channel is closed */
+    public void serve() throws IOException {
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        if (unix) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+        try (ServerSocketChannel server = unix ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                                               : ServerSocketChannel.open()) {
+            server.bind(address);
+            System.out.println("tiny compile server listening on " + server.getLocalAddress());
+            while (!Thread.currentThread().isInterrupted()) {
+                SocketChannel client = server.accept();
+                pool.execute(() -> handle(client));
+            }
+        } finally {
+            pool.shutdown();
+            functionExecutor.shutdown();
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+             PrintStream out = new PrintStream(Channels.newOutputStream(client), false, StandardCharsets.UTF_8)) {
+            String header;
+            while ((header = readLine(in)) != null) {
+                try {
+                    String[] parts = header.trim().split("\\s+");
+                    switch (parts[0]) {
+                        case "PING":
+                            out.println("PONG");
+                            break;
+                        case "QUIT":
+                            return;
+                        case "PATH":
+                            if (parts.length < 2) {
+                                out.println("END FAILED 0 missing path");
+                                break;
+                            }
+                            compile(new Lexer(parts[1]), traceLevel(parts, 2), functionExecutor(parts, 2), out);
+                            break;
+                        case "SOURCE":
+                            if (parts.length < 2) {
+                                out.println("END FAILED 0 missing source length");
+                                break;
+                            }
+                            byte[] source = in.readNBytes(Integer.parseInt(parts[1]));
+                            compile(Lexer.fromSource(new String(source, StandardCharsets.UTF_8)), traceLevel(parts, 2),
+                                    functionExecutor(parts, 2), out);
+                            break;
+                        default:
+                            out.println("END FAILED 0 unknown request " + parts[0]);
+                    }
+                } catch (RuntimeException e) {     // bad request header (length, trace level, missing file)
+                    out.println("END FAILED 0 " + e.getMessage());
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("compile server: connection dropped: " + e);
+        }
+    }
+
+    /** compiles straight into the connection's stream, then appends trace dump and END line */
+    private static void compile(Lexer lexer, TraceLevel level, ExecutorService functionExecutor, PrintStream out) {
+        RingBufferTraceSink sink = level == TraceLevel.OFF ? null : new RingBufferTraceSink(TRACE_CAPACITY);
+        long start = System.nanoTime();
+        String status;
+        try (CompilationContext context = new CompilationContext(new Tracer(level, sink), out)) {
+            try {
+                Parser parser = new Parser(lexer, context);
+                parser.setFunctionExecutor(functionExecutor);
+                parser.parse();
+                status = context.getDiagnostics().isEmpty() ? "OK" : "DIAGNOSTICS";
+            } catch (RuntimeException | StackOverflowError e) {
+                out.println("compiler crashed: " + e);
+                status = "FAILED";
+            }
+        }
+        if (sink != null) {
+            sink.dump(out);
+        }
+        out.printf("END %s %.3f\n", status, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static TraceLevel traceLevel(String[] parts, int from) {
+        for (int i = from; i < parts.length; i++) {
+            if (parts[i].startsWith("trace=")) {
+                return TraceLevel.valueOf(parts[i].substring("trace=".length()).toUpperCase());
+            }
+        }
+        return TraceLevel.OFF;
+    }
+
+    /** the shared function executor for functions=parallel, null for functions=serial or no option */
+    private ExecutorService functionExecutor(String[] parts, int from) {
+        for (int i = from; i < parts.length; i++) {
+            if (parts[i].startsWith("functions=")) {
+                String mode = parts[i].substring("functions=".length());
+                if (mode.equals("parallel")) {
+                    return functionExecutor;
+                } else if (!mode.equals("serial")) {
+                    throw new IllegalArgumentException("unknown functions mode " + mode);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** reads one \n-terminated header line byte by byte, so the source bytes after it stay in the stream */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** address is a port number, or unix:<socket path> */
+    public static void run(String address) throws IOException {
+        CompileServer server = address.startsWith("unix:") ? new CompileServer(Path.of(address.substring("unix:".length())))
+                                                           : new CompileServer(Integer.parseInt(address));
+        warmUp(200);
+        server.serve();
+    }
+}
@@ -0,0 +1,114 @@
+package frontend;
+
+import java.util.Arrays;
+
+/** IDENTIFIER TABLE
+ *  interned identifier names. Names are looked up by id in an id-indexed array, ids are looked up by name in an
+ *  open-addressing hash table that can be probed directly with a char range of the source, so the lexer only allocates
+ *  a String the first time an identifier is seen.
+ *
+ *  KEYWORDS: interned first at construction, so keywords always have ids 1..14 and are recognized by the same single
+ *            probe as any other identifier.
+ *  */
+public class IdentifierTable {
+
+    // keyword ids, in the order of KEYWORDS
+    public static final int LET = 1, CALL = 2, IF = 3, THEN = 4, ELSE = 5, FI = 6, WHILE = 7,
+                            DO = 8, OD = 9, RETURN = 10, VAR = 11, VOID = 12, FUNCTION = 13, MAIN = 14;
+    public static final int LAST_KEYWORD_ID = MAIN;
+    private static final String[] KEYWORDS = {
+            "let", "call", "if", "then", "else", "fi", "while",         // 1 .. 7
+            "do", "od", "return", "var", "void", "function", "main"     // 8 .. 14
+    };
+
+    private String[] names = new String[64];        // id -> name, index 0 unused
+    private int size = 0;                           // number of interned identifiers, also the last id handed out
+    private int[] slots = new int[128];             // open addressing: hash slot -> id, 0 is an empty slot
+
+    public IdentifierTable() {
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    /** returns id of the name, interning it if it has not been seen before */
+    public int intern(String name) {
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    /** returns id of the name in source[start, start+length), interning it if it has not been seen before */
+    public int intern(char[] source, int start, int length) {
+        int slot = findSlot(source, start, length, hash(source, start, length));
+        if (slots[slot] != 0) {
+            return slots[slot];
+        }
+        int id = ++size;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = new String(source, start, length);
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /** returns id of the name, -1 if it has never been interned */
+    public int lookup(String name) {
+        int slot = findSlot(name.toCharArray(), 0, name.length(), name.hashCode());
+        return slots[slot] != 0 ? slots[slot] : -1;
+    }
+
+    /** returns name of the identifier id, null if no such id */
+    public String name(int id) {
+        return id >= 1 && id <= size ? names[id] : null;
+    }
+
+    public boolean isKeyword(int id) {
+        return id >= 1 && id <= LAST_KEYWORD_ID;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // same hash as String.hashCode(), so lookups by String and by char range agree
+    private static int hash(char[] source, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; i++) {
+            h = 31 * h + source[i];
+        }
+        return h;
+    }
+
+    /** linear probe for the slot holding this name, or the empty slot it would go in */
+    private int findSlot(char[] source, int start, int length, int hash) {
+        int mask = slots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slots[slot] != 0 && !sameName(names[slots[slot]], source, start, length)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean sameName(String name, char[] source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        for (int id = 1; id <= size; id++) {
+            char[] name = names[id].toCharArray();
+            slots[findSlot(name, 0, name.length, hash(name, 0, name.length))] = id;
+        }
+    }
+}
@@ -2,185 +2,352 @@ package frontend;
 
 import errors.TinySyntaxError;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 
 /** NOTES: frontend.Lexer class parses input source program char by char
+ *         the whole source is read and decoded once into a char array and scanned by index
  *         calling .peek() returns the next token WITHOUT consuming it, calling .next() consumes the next token
+ *         every token is lexed exactly once into a small lookahead ring buffer, .peek(k) looks k tokens past the next
+ *         tokens are lexed as packed longs (see frontend.PackedToken), .nextPacked()/.peekPacked() never allocate,
+ *         .next()/.peek() box the packed token into a frontend.Token
+ *         .scanAhead() looks past the ring without keeping anything: the tokens it scans are lexed again when consumed
+ *         .bufferAllTokens() lexes the rest of the input up front into a token array (token mode), after which the
+ *         token stream can be sliced (.sliceTokens()) so separate parsers can work on disjoint parts of the program
+ *         a syntax error ends the input: it is handed to the error reporter (the compile's diagnostics when lexing for
+ *         a frontend.Parser) and every later token is EOF
  *         Identifier and Symbol names/string representations are entirely contained within the frontend.Lexer class.
  *         Output Tokens are identified by an int ID in the symbol/identifier table inside the frontend.Lexer.
  *      **/
 public class Lexer {
 
-    private final Map<String, Integer> symbolMappedToId = new HashMap<>();
-    private final Map<String, Integer> identifiersMappedToId = new HashMap<>();
+    private static final String[] SYMBOLS = {
+            null,                                   // symbol ids start at 1
+            "==", "!=", "<", "<=", ">", ">=",       // 1 .. 6  relational ops
+            "(", ")", "+", "-", "*", "/",           // 7 .. 12
+            "<-", ";", ",", "{", "}", "."           // 13 .. 18
+    };
+    private final IdentifierTable identifiers;
+    private Consumer<String> errorReporter = System.out::println;
 
-    private final BufferedReader reader;
-    private boolean lookedAhead = false;        // manual 1 char lookahead. So reader.reset() can be used for token look ahead.
-    private int currentChar;
+    private final char[] source;
+    private final int sourceLength;
+    private int position = 0;                   // index of the next unscanned char in source
+
+    // token mode: when tokens != null, tokens are read from tokens[tokenPosition .. tokenLimit) instead of source
+    private long[] tokens;
+    private int tokenPosition;
+    private int tokenLimit;
+
+    // token lookahead ring buffer of packed tokens. tokens are lexed once into the buffer by peek() and handed out by next()
+    private static final int LOOKAHEAD_CAPACITY = 4;
+    private final long[] lookahead = new long[LOOKAHEAD_CAPACITY];
+    private int lookaheadHead = 0;              // index of the next token to be consumed
+    private int lookaheadCount = 0;             // number of tokens currently buffered
 
     public Lexer(String fileName) {
-        initializeKeywordIdentifiers();
-        symbolMappedToId();
+        this(readSourceFile(fileName));
+    }
+
+    /** lexes an in-memory source program, no file is touched. The source is copied once into the scanned array. */
+    public static Lexer fromSource(CharSequence source) {
+        char[] chars = new char[source.length()];
+        if (source instanceof String string) {
+            string.getChars(0, chars.length, chars, 0);
+        } else {
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = source.charAt(i);
+            }
+        }
+        return new Lexer(CharBuffer.wrap(chars));
+    }
+
+    private Lexer(CharBuffer source) {
+        this.identifiers = new IdentifierTable();
+        this.source = source.array();
+        this.sourceLength = source.limit();
+    }
+
+    /** token mode lexer over tokens[from, to), sharing the identifier table it was lexed with */
+    private Lexer(long[] tokens, int from, int to, IdentifierTable identifiers) {
+        this.identifiers = identifiers;
+        this.source = new char[0];
+        this.sourceLength = 0;
+        this.tokens = tokens;
+        this.tokenPosition = from;
+        this.tokenLimit = to;
+    }
+
+    /** reads the whole file and decodes its bytes once, straight into the scanned array, so scanning never does IO.
+     *  Malformed input is replaced, not rejected. */
+    private static CharBuffer readSourceFile(String fileName) {
         try {
-            File file = new File(fileName);
-            this.reader = new BufferedReader(new FileReader(file));
-        } catch (IOException e){
+            return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(Path.of(fileName))));
+        } catch (IOException e) {
             throw new RuntimeException("IOException thrown: " + fileName + " cannot be opened.");
         }
     }
 
+    /** where syntax errors found while peeking or buffering are reported, System.out unless set */
+    public void setErrorReporter(Consumer<String> errorReporter) {
+        this.errorReporter = errorReporter;
+    }
+
     // RETURNS NEXT TOKEN IN INPUT SOURCE PROGRAM
-    public Token next() throws IOException, TinySyntaxError {
-        if (!this.lookedAhead) {
-            this.currentChar = this.reader.read();
-        } else {
-            this.lookedAhead = false;
+    public Token next() throws TinySyntaxError {
+        return PackedToken.toToken(nextPacked());
+    }
+
+    // RETURNS NEXT PACKED TOKEN IN INPUT SOURCE PROGRAM, PackedToken.EOF AT END OF INPUT
+    public long nextPacked() throws TinySyntaxError {
+        if (this.lookaheadCount > 0) {
+            long res = this.lookahead[this.lookaheadHead];
+            this.lookaheadHead = (this.lookaheadHead + 1) % LOOKAHEAD_CAPACITY;
+            this.lookaheadCount--;
+            return res;
         }
-        if (this.currentChar == -1) {
-            return null;
+        return lex();
+    }
+
+    // LEXES NEXT TOKEN DIRECTLY FROM INPUT SOURCE PROGRAM, BYPASSING THE LOOKAHEAD BUFFER
+    private long lex() throws TinySyntaxError {
+        if (this.tokens != null) {
+            return this.tokenPosition < this.tokenLimit ? this.tokens[this.tokenPosition++] : PackedToken.EOF;
+        }
+        while (this.position < this.sourceLength && isWhiteSpace(this.source[this.position])) {
+            this.position++;
+        }
+        if (this.position >= this.sourceLength) {
+            return PackedToken.EOF;
         }
+        char c = this.source[this.position++];
         // CHECK IF SYMBOL
-        switch (this.currentChar) {
+        switch (c) {
             case '(':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("("));
+                return PackedToken.LPAREN;
             case ')':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID(")"));
+                return PackedToken.RPAREN;
             case '+':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("+"));
+                return PackedToken.PLUS;
             case '-':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("-"));
+                return PackedToken.MINUS;
             case '*':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("*"));
+                return PackedToken.TIMES;
             case '/':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("/"));
+                return PackedToken.DIV;
             case ';':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID(";"));
+                return PackedToken.SEMICOLON;
             case ',':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID(","));
+                return PackedToken.COMMA;
             case '{':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("{"));
+                return PackedToken.LBRACE;
             case '}':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("}"));
+                return PackedToken.RBRACE;
             case '.':
-                return new Token(Token.TokenType.SYMBOL, getSymbolID("."));
+                return PackedToken.PERIOD;
             case '=':
-                if ((this.currentChar = this.reader.read()) == '=') {
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID("=="));
+                if (nextCharIs('=')) {
+                    return PackedToken.EQL;
                 } else {
-                    throw new TinySyntaxError("SYNTAX ERROR DETECTED: =" + (char)this.currentChar + " IS NOT A VALID SYMBOL");
+                    throw syntaxError("SYNTAX ERROR DETECTED: =" + charAt(this.position) + " IS NOT A VALID SYMBOL");
                 }
             case '!':
-                if ((this.currentChar = this.reader.read()) == '=') {
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID("!="));
+                if (nextCharIs('=')) {
+                    return PackedToken.NEQ;
                 } else {
-                    throw new TinySyntaxError("SYNTAX ERROR DETECTED: !" + (char)this.currentChar + " IS NOT A VALID SYMBOL");
+                    throw syntaxError("SYNTAX ERROR DETECTED: !" + charAt(this.position) + " IS NOT A VALID SYMBOL");
                 }
             case '<':
-                this.currentChar = this.reader.read();      // read next character
-                if (this.currentChar == '-') {
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID("<-"));
+                if (nextCharIs('-')) {
+                    return PackedToken.BECOMES;
                 }
-                else if (this.currentChar == '=') {
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID("<="));
+                else if (nextCharIs('=')) {
+                    return PackedToken.LEQ;
                 }
                 else {
-                    this.lookedAhead = true;
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID("<"));
+                    return PackedToken.LSS;
                 }
             case '>':
-                this.currentChar = this.reader.read();
-                if (this.currentChar == '=') {
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID(">="));
+                if (nextCharIs('=')) {
+                    return PackedToken.GEQ;
                 }
                 else {
-                    this.lookedAhead = true;
-                    return new Token(Token.TokenType.SYMBOL, getSymbolID(">"));
+                    return PackedToken.GTR;
                 }
         }
         // CHECK LITERAL VALUE
-        if (isDigit(this.currentChar)) {
-            int value = 0;
-            do {
-                value = value * 10 + (this.currentChar - 48);
+        if (isDigit(c)) {
+            int value = c - '0';
+            while (this.position < this.sourceLength && isDigit(this.source[this.position])) {
+                value = value * 10 + (this.source[this.position++] - '0');
             }
-            while ( isDigit(this.currentChar = this.reader.read()) );
-
-            this.lookedAhead = true;
-            return new Token(Token.TokenType.LITERAL, value);
+            return PackedToken.pack(PackedToken.LITERAL, value);
         }
         // CHECK IDENTIFIER
-        else if (isLetter(this.currentChar)) {
-            StringBuilder name = new StringBuilder();
-            do {
-                name.append((char)this.currentChar);
-                this.currentChar = this.reader.read();
-            }
-            while (isDigit(this.currentChar) || isLetter(this.currentChar));
-
-            this.lookedAhead = true;
-            if (getIdentifierID(name.toString()) == -1) {
-                int id = this.identifiersMappedToId.size()+1;
-                this.identifiersMappedToId.put(name.toString(), id);
-                return new Token(Token.TokenType.IDENTIFIER, id);
-            }
-            else {
-                return new Token( Token.TokenType.IDENTIFIER, getIdentifierID(name.toString()) );
+        else if (isLetter(c)) {
+            int start = this.position - 1;
+            while (this.position < this.sourceLength &&
+                    (isDigit(this.source[this.position]) || isLetter(this.source[this.position]))) {
+                this.position++;
             }
-        }
-        else if (isWhiteSpace(this.currentChar)) {
-            return next();
+            int id = this.identifiers.intern(this.source, start, this.position - start);
+            return PackedToken.pack(PackedToken.IDENTIFIER, id);
         }
         else {
-            throw new TinySyntaxError("Tiny Syntax Error!");
+            throw syntaxError("SYNTAX ERROR DETECTED: " + c + " IS NOT A VALID SYMBOL");
+        }
+    }
+
+    /** consumes the next char only if it is the expected one */
+    private boolean nextCharIs(char expected) {
+        if (this.position < this.sourceLength && this.source[this.position] == expected) {
+            this.position++;
+            return true;
         }
+        return false;
+    }
+
+    /** skips the rest of the input, so every token after a syntax error is EOF */
+    private TinySyntaxError syntaxError(String message) {
+        this.position = this.sourceLength;
+        return new TinySyntaxError(message);
+    }
+
+    /** char at index for error messages, "EOF" past the end of source */
+    private String charAt(int index) {
+        return index < this.sourceLength ? String.valueOf(this.source[index]) : "EOF";
     }
 
     public Token peek() {
+        return PackedToken.toToken(peekPacked(0));
+    }
+
+    public Token peek(int k) {
+        return PackedToken.toToken(peekPacked(k));
+    }
+
+    /** returns the packed token k positions after the next token WITHOUT consuming anything. peekPacked(0) is the next
+     *  token. Tokens are lexed at most once, any token looked at here is later handed out by nextPacked() from the buffer.
+     *  Returns PackedToken.EOF at end of input or on a syntax error, which is handed to the error reporter. */
+    public long peekPacked(int k) {
+        if (k < 0 || k >= LOOKAHEAD_CAPACITY) {
+            throw new IllegalArgumentException("lookahead of " + k + " exceeds buffer capacity " + LOOKAHEAD_CAPACITY);
+        }
         try {
-            this.reader.mark(26);
-            boolean saveLookedAhead = this.lookedAhead;
-            int saveCurrentChar = this.currentChar;
-
-            Token res = next();
-            this.reader.reset();
-            // restore all states after reset bufferedReader.
-            this.lookedAhead = saveLookedAhead;
-            this.currentChar = saveCurrentChar;
-            return res;
+            while (this.lookaheadCount <= k) {
+                this.lookahead[(this.lookaheadHead + this.lookaheadCount) % LOOKAHEAD_CAPACITY] = lex();
+                this.lookaheadCount++;
+            }
+            return this.lookahead[(this.lookaheadHead + k) % LOOKAHEAD_CAPACITY];
+        }
+        catch (TinySyntaxError e) {
+            this.errorReporter.accept(e.getMessage());
         }
-        catch (IOException e) {
-            System.out.println("IO error");
+        return PackedToken.EOF;
+    }
+
+    /** scans ahead from the next token WITHOUT consuming or buffering anything: visitor is handed each token in turn
+     *  until it returns false or the input ends, then the lexer is back where it was. Only the scanned tokens are lexed,
+     *  identifiers among them are interned in source order, so ids are the same as when lexing lazily. A syntax error
+     *  ends the scan like EOF, it is reported once the parser gets there. */
+    public void scanAhead(LongPredicate visitor) {
+        for (int k = 0; k < this.lookaheadCount; k++) {
+            long token = this.lookahead[(this.lookaheadHead + k) % LOOKAHEAD_CAPACITY];
+            if (token == PackedToken.EOF || !visitor.test(token)) {
+                return;
+            }
+        }
+        int savedPosition = this.position;
+        int savedTokenPosition = this.tokenPosition;
+        try {
+            long token;
+            while ((token = lex()) != PackedToken.EOF && visitor.test(token)) {
+                // visitor decides when to stop
+            }
         } catch (TinySyntaxError e) {
-            System.out.println("tiny syntax error");
+            // reported when the parser reaches it
+        } finally {
+            this.position = savedPosition;
+            this.tokenPosition = savedTokenPosition;
         }
-        return null;
+    }
+
+    // ------------------------------ TOKEN MODE ------------------------------- //
+
+    /** lexes all remaining input (including tokens already peeked at) into a token array and switches to token mode.
+     *  Every identifier of the rest of the program is interned here, in source order, so ids are the same as when
+     *  lexing lazily. A syntax error ends the token array, as if the input ended there. */
+    public void bufferAllTokens() {
+        if (this.tokens != null) {
+            return;
+        }
+        long[] buffered = new long[Math.max(16, this.sourceLength / 4)];
+        int count = 0;
+        try {
+            long token;
+            while ((token = nextPacked()) != PackedToken.EOF) {
+                if (count == buffered.length) {
+                    buffered = Arrays.copyOf(buffered, count * 2);
+                }
+                buffered[count++] = token;
+            }
+        } catch (TinySyntaxError e) {
+            this.errorReporter.accept(e.getMessage());
+        }
+        this.tokens = buffered;
+        this.tokenPosition = 0;
+        this.tokenLimit = count;
+    }
+
+    /** token mode only: index of the next token next() will return */
+    public int tokenIndex() {
+        return this.tokenPosition - this.lookaheadCount;
+    }
+
+    /** token mode only: the token at index, PackedToken.EOF past the end */
+    public long tokenAt(int index) {
+        return index < this.tokenLimit ? this.tokens[index] : PackedToken.EOF;
+    }
+
+    /** token mode only: continue lexing at index, dropping any lookahead */
+    public void seekToken(int index) {
+        this.lookaheadCount = 0;
+        this.tokenPosition = index;
+    }
+
+    /** token mode only: a new lexer over tokens [from, to), sharing this lexer's identifier table. Slices only read the
+     *  shared tables, so several slices can be parsed on different threads. */
+    public Lexer sliceTokens(int from, int to) {
+        return new Lexer(this.tokens, from, to, this.identifiers);
     }
 
     public int getSymbolID(String symbol) {
-        return this.symbolMappedToId.getOrDefault(symbol, -1);
+        for (int id = 1; id < SYMBOLS.length; id++) {
+            if (SYMBOLS[id].equals(symbol)) {
+                return id;
+            }
+        }
+        return -1;
     }
 
     public int getIdentifierID(String keyword) {
-        return this.identifiersMappedToId.getOrDefault(keyword, -1);
+        return this.identifiers.lookup(keyword);
     }
 
-    /** FOR DEBUGGING PURPOSES ONLY. For printing out symbol table with variable names. */
-    public Map<String, Integer> getIdentifiersMappedToId() {
-        return identifiersMappedToId;
+    /** the interned identifier table, shared with the parser and the CFG printer for id -> name lookups */
+    public IdentifierTable getIdentifierTable() {
+        return identifiers;
     }
 
     public String getIdentifierName(int id) {
-        for (Map.Entry<String, Integer> set : this.identifiersMappedToId.entrySet()) {
-            if (set.getValue() == id) {
-                return set.getKey();
-            }
-        }
-        return null;
+        return this.identifiers.name(id);
     }
 
     private boolean isDigit(int c) {
@@ -195,65 +362,26 @@ public class Lexer {
         return c == ' ' || c == '\n' || c == '\t' || c == '\f' || c == '\r';
     }
 
-    private void symbolMappedToId() {
-        int id = 1;
-        this.symbolMappedToId.put("==", id++);      // 1
-        this.symbolMappedToId.put("!=", id++);
-        this.symbolMappedToId.put("<", id++);       // 3
-        this.symbolMappedToId.put("<=", id++);
-        this.symbolMappedToId.put(">", id++);       // 5
-        this.symbolMappedToId.put(">=", id++);
-        this.symbolMappedToId.put("(", id++);       // 7
-        this.symbolMappedToId.put(")", id++);
-        this.symbolMappedToId.put("+", id++);       // 9
-        this.symbolMappedToId.put("-", id++);
-        this.symbolMappedToId.put("*", id++);       // 11
-        this.symbolMappedToId.put("/", id++);
-        this.symbolMappedToId.put("<-", id++);      // 13
-        this.symbolMappedToId.put(";", id++);
-        this.symbolMappedToId.put(",", id++);       // 15
-        this.symbolMappedToId.put("{", id++);
-        this.symbolMappedToId.put("}", id++);       // 17
-        this.symbolMappedToId.put(".", id);
-    }
 
-    private void initializeKeywordIdentifiers() {
-        int id = 1;
-        this.identifiersMappedToId.put("let", id++);        // 1
-        this.identifiersMappedToId.put("call", id++);
-        this.identifiersMappedToId.put("if", id++);         // 3
-        this.identifiersMappedToId.put("then", id++);
-        this.identifiersMappedToId.put("else", id++);       // 5
-        this.identifiersMappedToId.put("fi", id++);
-        this.identifiersMappedToId.put("while", id++);      // 7
-        this.identifiersMappedToId.put("do", id++);
-        this.identifiersMappedToId.put("od", id++);         // 9
-        this.identifiersMappedToId.put("return", id++);
-        this.identifiersMappedToId.put("var", id++);        // 11
-        this.identifiersMappedToId.put("void", id++);
-        this.identifiersMappedToId.put("function", id++);   // 13
-        this.identifiersMappedToId.put("main", id);
+    // FOR DEBUGGING PURPOSES ONLY
+    public String debugToken(Token token) {
+        return debugToken(PackedToken.pack(token.isLiteral() ? PackedToken.LITERAL :
+                token.isSymbol() ? PackedToken.SYMBOL : PackedToken.IDENTIFIER, token.getIdValue()));
     }
 
-
     // FOR DEBUGGING PURPOSES ONLY
-    public String debugToken(Token token) {
-        if (token.isLiteral()) {
-            return String.format("Literal: %d\n", token.getIdValue());
+    public String debugToken(long token) {
+        if (PackedToken.isLiteral(token)) {
+            return String.format("Literal: %d\n", PackedToken.idValue(token));
         }
-        else if (token.isSymbol()) {
-            for (Map.Entry<String, Integer> entry : this.symbolMappedToId.entrySet()) {
-                if (entry.getValue() == token.getIdValue()) {
-                    return "Symbol: " + entry.getKey() + " | id: " + token.getIdValue();
-                }
+        else if (PackedToken.isSymbol(token)) {
+            int id = PackedToken.idValue(token);
+            if (id >= 1 && id < SYMBOLS.length) {
+                return "Symbol: " + SYMBOLS[id] + " | id: " + id;
             }
         }
-        else {
-            for (Map.Entry<String, Integer> entry : this.identifiersMappedToId.entrySet()) {
-                if (entry.getValue() == token.getIdValue()) {
-                    return "Identifier: " + entry.getKey() + " | id: " + token.getIdValue();
-                }
-            }
+        else if (this.identifiers.name(PackedToken.idValue(token)) != null) {
+            return "Identifier: " + this.identifiers.name(PackedToken.idValue(token)) + " | id: " + PackedToken.idValue(token);
         }
         return "token id not found";
     }
@@ -269,8 +397,6 @@ public class Lexer {
                 lexer.next();
                 System.out.println(lexer.debugToken(next));
             }
-        } catch (IOException e) {
-            System.out.println("IO error");
         } catch (TinySyntaxError e) {
             System.out.println("tiny syntax error");
         }
@@ -0,0 +1,120 @@
+package frontend;
+
+/** PACKED TOKEN
+ *  allocation-free alternative to frontend.Token. A token is a single long: the token kind sits in the high 32 bits
+ *  and the id (symbol/identifier) or value (literal) in the low 32 bits. EOF is the all-zero token.
+ *  Only static helpers live here, a packed token is never wrapped in an object.
+ *  */
+public final class PackedToken {
+
+    public static final long EOF = 0L;
+
+    public static final int SYMBOL = 1;
+    public static final int IDENTIFIER = 2;
+    public static final int LITERAL = 3;
+
+    // precomputed packed keywords, compared with == by the parser
+    public static final long LET = keyword(IdentifierTable.LET);
+    public static final long CALL = keyword(IdentifierTable.CALL);
+    public static final long ELSE = keyword(IdentifierTable.ELSE);
+    public static final long VAR = keyword(IdentifierTable.VAR);
+    public static final long VOID = keyword(IdentifierTable.VOID);
+    public static final long FUNCTION = keyword(IdentifierTable.FUNCTION);
+    public static final long WHILE = keyword(IdentifierTable.WHILE);
+    public static final long OD = keyword(IdentifierTable.OD);
+
+    // symbol ids, in the order of the Lexer's symbol table
+    public static final int EQL_ID = 1, NEQ_ID = 2, LSS_ID = 3, LEQ_ID = 4, GTR_ID = 5, GEQ_ID = 6;
+
+    // precomputed packed symbols, returned by the lexer and compared with == by the parser
+    public static final long EQL = pack(SYMBOL, EQL_ID);
+    public static final long NEQ = pack(SYMBOL, NEQ_ID);
+    public static final long LSS = pack(SYMBOL, LSS_ID);
+    public static final long LEQ = pack(SYMBOL, LEQ_ID);
+    public static final long GTR = pack(SYMBOL, GTR_ID);
+    public static final long GEQ = pack(SYMBOL, GEQ_ID);
+    public static final long LPAREN = pack(SYMBOL, 7);
+    public static final long RPAREN = pack(SYMBOL, 8);
+    public static final long PLUS = pack(SYMBOL, 9);
+    public static final long MINUS = pack(SYMBOL, 10);
+    public static final long TIMES = pack(SYMBOL, 11);
+    public static final long DIV = pack(SYMBOL, 12);
+    public static final long BECOMES = pack(SYMBOL, 13);
+    public static final long SEMICOLON = pack(SYMBOL, 14);
+    public static final long COMMA = pack(SYMBOL, 15);
+    public static final long LBRACE = pack(SYMBOL, 16);
+    public static final long RBRACE = pack(SYMBOL, 17);
+    public static final long PERIOD = pack(SYMBOL, 18);
+
+    // first set of statement, as a bitmask over keyword ids
+    private static final int STATEMENT_FIRST = 1 << IdentifierTable.LET | 1 << IdentifierTable.CALL |
+            1 << IdentifierTable.IF | 1 << IdentifierTable.WHILE | 1 << IdentifierTable.RETURN;
+
+    private PackedToken() {
+    }
+
+    public static long keyword(int keywordId) {
+        return pack(IDENTIFIER, keywordId);
+    }
+
+    public static long pack(int kind, int idOrValue) {
+        return ((long) kind << 32) | (idOrValue & 0xFFFFFFFFL);
+    }
+
+    public static int kind(long token) {
+        return (int) (token >>> 32);
+    }
+
+    /** id for symbol & identifier, value for literal */
+    public static int idValue(long token) {
+        return (int) token;
+    }
+
+    public static boolean isEOF(long token) {
+        return token == EOF;
+    }
+
+    public static boolean isSymbol(long token) {
+        return kind(token) == SYMBOL;
+    }
+
+    public static boolean isLiteral(long token) {
+        return kind(token) == LITERAL;
+    }
+
+    public static boolean isUserDefinedIdentifier(long token) {
+        return kind(token) == IDENTIFIER && idValue(token) > IdentifierTable.LAST_KEYWORD_ID;
+    }
+
+    public static boolean isKeyword(long token) {
+        return kind(token) == IDENTIFIER && idValue(token) >= 1 && idValue(token) <= IdentifierTable.LAST_KEYWORD_ID;
+    }
+
+    /** true if token is in the first set of statement: let, call, if, while, return */
+    public static boolean startsStatement(long token) {
+        return isKeyword(token) && (STATEMENT_FIRST & (1 << idValue(token))) != 0;
+    }
+
+    /** true if token is in the first set of expression: identifier, literal, "(", call */
+    public static boolean startsExpression(long token) {
+        return isUserDefinedIdentifier(token) || isLiteral(token) || token == LPAREN || token == CALL;
+    }
+
+    public static boolean isRelationalOp(long token) {
+        return kind(token) == SYMBOL && idValue(token) >= EQL_ID && idValue(token) <= GEQ_ID;
+    }
+
+    /** boxes a packed token into a frontend.Token, null at EOF. Only for callers of the object-based API. */
+    public static Token toToken(long token) {
+        switch (kind(token)) {
+            case SYMBOL:
+                return new Token(Token.TokenType.SYMBOL, idValue(token));
+            case IDENTIFIER:
+                return new Token(Token.TokenType.IDENTIFIER, idValue(token));
+            case LITERAL:
+                return new Token(Token.TokenType.LITERAL, idValue(token));
+            default:
+                return null;
+        }
+    }
+}
@@ -1,30 +1,100 @@
 package frontend;
 
 import IR.BasicBlock.BasicBlock;
+import IR.Context.CompilationContext;
+import IR.Function.Function;
 import IR.Instruction.Instruction;
 import IR.Instruction.BinaryInstr;
 import IR.Instruction.MjuInstr;
 import IR.Instruction.UnaryInstr;
+import IR.Pass.PassManager;
 import IR.SSAIR.GlobalSSAIR;
 import errors.TinySyntaxError;
-
-import java.io.IOException;
-
-/** A recursive descent parser based on EBNF for tiny. SSA IR is generated while parsing. */
+import trace.ConsoleTraceSink;
+import trace.TraceLevel;
+import trace.Tracer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/** A recursive descent parser based on EBNF for tiny. SSA IR is generated while parsing.
+ *  Tokens are consumed as packed longs (see frontend.PackedToken), so parsing allocates no Token objects.
+ *  Keywords and symbols are matched against precomputed packed tokens, never looked up by string. */
 public class Parser {
 
+    // relational op symbol id -> branch taken when the relation is false
+    private static final Instruction.Op[] REL_OP_BRANCH = new Instruction.Op[PackedToken.GEQ_ID + 1];
+    static {
+        REL_OP_BRANCH[PackedToken.EQL_ID] = Instruction.Op.BNE;
+        REL_OP_BRANCH[PackedToken.NEQ_ID] = Instruction.Op.BEQ;
+        REL_OP_BRANCH[PackedToken.LSS_ID] = Instruction.Op.BGE;
+        REL_OP_BRANCH[PackedToken.LEQ_ID] = Instruction.Op.BGT;
+        REL_OP_BRANCH[PackedToken.GTR_ID] = Instruction.Op.BLE;
+        REL_OP_BRANCH[PackedToken.GEQ_ID] = Instruction.Op.BLT;
+    }
+
     private final Lexer lexer;
     private final GlobalSSAIR GlobalIR;
+    private final CompilationContext context;
+    private final Tracer tracer;
+    private ExecutorService functionExecutor;       // builds function declarations in parallel when set
+    // assigned ids of the whiles nested in the last scanned while, in source order, handed out as they are parsed
+    private final ArrayDeque<BitSet> nestedLoopAssignments = new ArrayDeque<>();
+
+    // packed identifier tokens of the built-in functions, interned once when the parser is built, compared with ==
+    private final long inputNum;
+    private final long outputNum;
+    private final long outputNewLine;
 
     // helper variables for mapping identifier to instruction operands
     private boolean termIsVarRef = false;
-    private Integer termVarRefId;
+    private int termVarRefId;
     private boolean exprIsVarRef = false;
-    private Integer exprVarRefId;
+    private int exprVarRefId;
 
     public Parser(Lexer lexer) {
+        this(lexer, new CompilationContext());
+    }
+
+    public Parser(Lexer lexer, Tracer tracer) {
+        this(lexer, new CompilationContext(tracer));
+    }
+
+    /** all IR state of this parse lives in the given context, one context per compile */
+    public Parser(Lexer lexer, CompilationContext context) {
         this.lexer = lexer;
-        this.GlobalIR = new GlobalSSAIR();
+        this.context = context;
+        this.tracer = context.getTracer();
+        this.GlobalIR = new GlobalSSAIR(context);
+        IdentifierTable identifiers = lexer.getIdentifierTable();
+        this.inputNum = PackedToken.pack(PackedToken.IDENTIFIER, identifiers.intern("InputNum"));
+        this.outputNum = PackedToken.pack(PackedToken.IDENTIFIER, identifiers.intern("OutputNum"));
+        this.outputNewLine = PackedToken.pack(PackedToken.IDENTIFIER, identifiers.intern("OutputNewLine"));
+        lexer.setErrorReporter(message -> {
+            context.reportDiagnostic(message);
+            tracer.trace(TraceLevel.ERROR, "tiny syntax error", message);
+        });
+    }
+
+    /** parser for a single function declaration, built in a forked context on a function executor thread */
+    private Parser(Parser parent, Lexer functionTokens, CompilationContext forked, List<Function> declaredBefore) {
+        this.lexer = functionTokens;
+        this.context = forked;
+        this.tracer = forked.getTracer();
+        this.GlobalIR = new GlobalSSAIR(forked, declaredBefore);
+        this.inputNum = parent.inputNum;
+        this.outputNum = parent.outputNum;
+        this.outputNewLine = parent.outputNewLine;
+    }
+
+    /** when set, function declarations are parsed and built into SSA concurrently on this executor */
+    public void setFunctionExecutor(ExecutorService functionExecutor) {
+        this.functionExecutor = functionExecutor;
     }
 
     public void parse() {
@@ -33,12 +103,14 @@ public class Parser {
 
     /** returns the Instruction that is mapped to the variable */
     public Instruction variableReference() {
-        System.out.println("variable reference: " + this.lexer.debugToken(peek()));
-        Token var = next();
-        Instruction value = GlobalIR.getIdentifierInstruction(var.getIdValue());
+        if (tracer.isEnabled(TraceLevel.DEBUG)) {
+            tracer.trace(TraceLevel.DEBUG, "variable reference", this.lexer.debugToken(peek()));
+        }
+        long var = next();
+        Instruction value = GlobalIR.getIdentifierInstruction(PackedToken.idValue(var));
         if (value == null) {
             warning( String.format("variable %s is referenced but never initialized.",
-                     lexer.getIdentifierName(var.getIdValue())) );
+                     lexer.getIdentifierName(PackedToken.idValue(var))) );
         }
         return value;
     }
@@ -46,29 +118,31 @@ public class Parser {
     /** returns the Instruction that represents the value of the literal */
     public Instruction number() {
         // DONE
-        System.out.println("number" + this.lexer.debugToken(peek()));
-        Token var = next();
-        return GlobalIR.addConstantIfNotExists(var.getIdValue());
+        if (tracer.isEnabled(TraceLevel.DEBUG)) {
+            tracer.trace(TraceLevel.DEBUG, "number", this.lexer.debugToken(peek()));
+        }
+        long var = next();
+        return GlobalIR.addConstantIfNotExists(PackedToken.idValue(var));
     }
 
     /** factor() returns the Instruction that represents the value of the var/constant/expression/function call */
     public Instruction factor() {
         // DONE
-        System.out.println("factor");
+        tracer.trace(TraceLevel.DEBUG, "factor");
         Instruction res;
-        Token peek = peek();
-        if (peek.isUserDefinedIdentifier()) {
+        long peek = peek();
+        if (PackedToken.isUserDefinedIdentifier(peek)) {
             res = variableReference();
         }
-        else if (peek.isLiteral()) {
+        else if (PackedToken.isLiteral(peek)) {
             res = number();
         }
-        else if (checkIfTokenIs(peek, "(")) {
+        else if (peek == PackedToken.LPAREN) {
             next();     // consumes "("
             res = expression();
             next();     // consumes ")"
         }
-        else if (checkIfTokenIs(peek, "call")) {
+        else if (peek == PackedToken.CALL) {
             res = nonVoidFunctionCall();        // returns instr. representing result of the function call
         } else {
             res = null;
@@ -79,70 +153,60 @@ public class Parser {
     /** returns the Instruction that represents the value of the term */
     public Instruction term() {
         // DONE
-        System.out.println("term");
+        tracer.trace(TraceLevel.DEBUG, "term");
         Instruction op1, op2, res;
         // check if op is a variable ref, if so, store its Identifier reference if an instruction is generated here
-        Integer op1IdRef = checkVarRefFactor(peek());
-        Integer op2IdRef;
+        int op1IdRef = checkVarRefFactor(peek());
+        int op2IdRef;
         op1 = res = factor();
-        while (checkIfTokenIs(peek(), "*") || checkIfTokenIs(peek(), "/") ) {
-            Token sym = next();     // consumes "*" or "/"
+        while (peek() == PackedToken.TIMES || peek() == PackedToken.DIV) {
+            long sym = next();     // consumes "*" or "/"
             op2IdRef = checkVarRefFactor(peek());
             op2 = factor();
-            if (checkIfTokenIs(sym, "*")) {
-                res = new BinaryInstr(Instruction.Op.MUL, op1, op2);
-            } else {
-                res = new BinaryInstr(Instruction.Op.DIV, op1, op2);
-            }
-            ((BinaryInstr)res).setOpIdReferences(op1IdRef, op2IdRef);
-            op1 = res = GlobalIR.insertInstrToCurrentBlock(res);
-            op1IdRef = null;
+            Instruction.Op op = sym == PackedToken.TIMES ? Instruction.Op.MUL : Instruction.Op.DIV;
+            op1 = res = GlobalIR.emitBinary(op, op1, op2, op1IdRef, op2IdRef);
+            op1IdRef = Instruction.NO_REFERENCE;
             termIsVarRef = false;
         }
         return res;
     }
 
     /** returns id of identifier if current factor is referring to an identifier */
-    private Integer checkVarRefFactor(Token peek) {
-        if (peek.isUserDefinedIdentifier()) {
+    private int checkVarRefFactor(long peek) {
+        if (PackedToken.isUserDefinedIdentifier(peek)) {
             termIsVarRef = true;
-            termVarRefId = peek.getIdValue();
-            return peek.getIdValue();
+            termVarRefId = PackedToken.idValue(peek);
+            return PackedToken.idValue(peek);
         }
         else {
-            return null;
+            return Instruction.NO_REFERENCE;
         }
     }
 
     /** expression() returns the Instruction object that is the value of the expression */
     public Instruction expression() {
         // DONE
-        System.out.println("expression");
+        tracer.trace(TraceLevel.DEBUG, "expression");
         Instruction op1, op2, res;
         op1 = res = term();
         // check if expression is expression term is a varRef
-        Integer op1IdRef = checkVarRefTerm();
-        Integer op2IdRef;
+        int op1IdRef = checkVarRefTerm();
+        int op2IdRef;
 
-        while (checkIfTokenIs(peek(), "+") || checkIfTokenIs(peek(), "-") ) {
-            Token sym = next();
+        while (peek() == PackedToken.PLUS || peek() == PackedToken.MINUS) {
+            long sym = next();
             op2 = term();
             op2IdRef = checkVarRefTerm();
-            if (checkIfTokenIs(sym, "+")) {
-                res = new BinaryInstr(Instruction.Op.ADD, op1, op2);
-            } else {
-                res = new BinaryInstr(Instruction.Op.SUB, op1, op2);
-            }
-            ((BinaryInstr)res).setOpIdReferences(op1IdRef, op2IdRef);
-            op1 = res = GlobalIR.insertInstrToCurrentBlock(res);
-            op1IdRef = null;
+            Instruction.Op op = sym == PackedToken.PLUS ? Instruction.Op.ADD : Instruction.Op.SUB;
+            op1 = res = GlobalIR.emitBinary(op, op1, op2, op1IdRef, op2IdRef);
+            op1IdRef = Instruction.NO_REFERENCE;
             exprIsVarRef = false;
         }
         return res;
     }
 
     /** returns id of identifier if current expression is referring to an identifier */
-    private Integer checkVarRefTerm() {
+    private int checkVarRefTerm() {
         if (termIsVarRef) {
             termIsVarRef = false;
             exprIsVarRef = true;
@@ -150,7 +214,7 @@ public class Parser {
             return termVarRefId;
         }
         else {
-            return null;
+            return Instruction.NO_REFERENCE;
         }
     }
 
@@ -158,16 +222,18 @@ public class Parser {
      *  the correct block is already entered in body of ifStatement() & whileStatement() */
     public void relation() {
         // DONE
-        System.out.println("relation");
+        tracer.trace(TraceLevel.DEBUG, "relation");
         Instruction expr1 = expression();
-        Integer op1IdRef = checkVarRefExpr();
-        Integer op2IdRef;
-        System.out.println("relational comparison: " + lexer.debugToken(peek()));
-        if (peek().isRelationalOp()) {
-            Token relOp = next();         // consumes relOp
+        int op1IdRef = checkVarRefExpr();
+        int op2IdRef;
+        if (tracer.isEnabled(TraceLevel.DEBUG)) {
+            tracer.trace(TraceLevel.DEBUG, "relational comparison", lexer.debugToken(peek()));
+        }
+        if (PackedToken.isRelationalOp(peek())) {
+            long relOp = next();         // consumes relOp
             Instruction expr2 = expression();
             op2IdRef = checkVarRefExpr();
-            BinaryInstr cmpInstr = new BinaryInstr(Instruction.Op.CMP, expr1, expr2);
+            BinaryInstr cmpInstr = new BinaryInstr(context, Instruction.Op.CMP, expr1, expr2);
             cmpInstr.setOpIdReferences(op1IdRef, op2IdRef);
             GlobalIR.insertInstrToCurrentBlock( cmpInstr );
             GlobalIR.insertInstrToCurrentBlock( computeRelOpBranchInstr(relOp) );
@@ -176,25 +242,27 @@ public class Parser {
         }
     }
 
-    private Integer checkVarRefExpr() {
+    private int checkVarRefExpr() {
         if (exprIsVarRef) {
             exprIsVarRef = false;
             return exprVarRefId;
         }
         else {
-            return null;
+            return Instruction.NO_REFERENCE;
         }
     }
 
     public void assignment() {
-        System.out.println("assignment");
-        if (checkIfTokenIs(peek(), "let")) {
+        tracer.trace(TraceLevel.DEBUG, "assignment");
+        if (peek() == PackedToken.LET) {
             next();     // consumes "let"
-            Token var = next();     // consumes identifier
+            long var = next();     // consumes identifier
             next();     // consumes "<-"
             Instruction value = expression();
-            GlobalIR.assign(var.getIdValue(), value);
-            System.out.println("variable assigned: " + lexer.debugToken(var));
+            GlobalIR.assign(PackedToken.idValue(var), value);
+            if (tracer.isEnabled(TraceLevel.DEBUG)) {
+                tracer.trace(TraceLevel.DEBUG, "variable assigned", lexer.debugToken(var));
+            }
         }
         else {
             error("assignment does not start with 'let'");
@@ -202,22 +270,22 @@ public class Parser {
     }
 
     public Instruction nonVoidFunctionCall() {
-        System.out.println("Non-void function call");
+        tracer.trace(TraceLevel.DEBUG, "Non-void function call");
         next();     // consumes "call"
-        Token funcName = next();
-        if (checkIfTokenIs(funcName, "InputNum")) {
+        long funcName = next();
+        if (funcName == inputNum) {
             next();
             next();
-            Instruction toAdd = new Instruction(Instruction.Op.READ);
+            Instruction toAdd = new Instruction(context, Instruction.Op.READ);
             GlobalIR.insertInstrToCurrentBlock(toAdd);
             return toAdd;
         }
         else {
-            if (!GlobalIR.functionIsVoid(funcName.getIdValue())) {
+            if (!GlobalIR.functionIsVoid(PackedToken.idValue(funcName))) {
                 // return functionCall(). have functionCall() return Instruction, voidFunctionCall can just not use it.
                 // mju instr for return value
                 Instruction res = functionCall(funcName);
-                GlobalIR.insertInstrToCurrentBlock(new MjuInstr(res, 30));
+                GlobalIR.insertInstrToCurrentBlock(new MjuInstr(context, res, 30));
                 return res;
             }
             else {
@@ -228,25 +296,25 @@ public class Parser {
     }
 
     public void voidFunctionCall() {
-        System.out.println("void function call");
+        tracer.trace(TraceLevel.DEBUG, "void function call");
         next();     // consumes "call"
-        Token funcName = next();
-        if (checkIfTokenIs(funcName, "OutputNum")) {
+        long funcName = next();
+        if (funcName == outputNum) {
             next();     // consumes "("
             Instruction arg = expression();
             next();     // consumes ")"
-            UnaryInstr toAdd = new UnaryInstr(Instruction.Op.WRITE, arg);
+            UnaryInstr toAdd = new UnaryInstr(context, Instruction.Op.WRITE, arg);
             toAdd.setOpIdReference(checkVarRefExpr());
             GlobalIR.insertInstrToCurrentBlock(toAdd);
         }
-        else if (checkIfTokenIs(funcName, "OutputNewLine")) {
+        else if (funcName == outputNewLine) {
             next();
             next();
-            Instruction toAdd = new Instruction(Instruction.Op.WRITENL);
+            Instruction toAdd = new Instruction(context, Instruction.Op.WRITENL);
             GlobalIR.insertInstrToCurrentBlock(toAdd);
         }
-        else if (GlobalIR.functionIsVoid(funcName.getIdValue())) {
-            System.out.println("function is void, function call is VALID!");
+        else if (GlobalIR.functionIsVoid(PackedToken.idValue(funcName))) {
+            tracer.trace(TraceLevel.DEBUG, "function is void, function call is VALID!");
             functionCall(funcName);             // user defined void function
         }
         else {
@@ -254,38 +322,38 @@ public class Parser {
         }
     }
 
-    public Instruction functionCall(Token funcName) {
-        System.out.println("function call");
+    public Instruction functionCall(long funcName) {
+        tracer.trace(TraceLevel.DEBUG, "function call");
         Instruction arg;
 
         int rgId = 0;
-        if (checkIfTokenIs(peek(), "(")) {
+        if (peek() == PackedToken.LPAREN) {
             next();         // consumes "("
-            if (!checkIfTokenIs(peek(), ")")) {
+            if (peek() != PackedToken.RPAREN) {
                 arg = expression();
-                GlobalIR.insertInstrToCurrentBlock(new MjuInstr(arg, ++rgId));
-                while (checkIfTokenIs(peek(), ",")) {
+                GlobalIR.insertInstrToCurrentBlock(new MjuInstr(context, arg, ++rgId));
+                while (peek() == PackedToken.COMMA) {
                     next();
                     arg = expression();
-                    GlobalIR.insertInstrToCurrentBlock(new MjuInstr(arg, ++rgId));
+                    GlobalIR.insertInstrToCurrentBlock(new MjuInstr(context, arg, ++rgId));
                 }
             }
             next();         // consumes ")"
-            return GlobalIR.callCurrentFunction(funcName.getIdValue(), lexer.getIdentifierName(funcName.getIdValue()));
+            return GlobalIR.callCurrentFunction(PackedToken.idValue(funcName), lexer.getIdentifierName(PackedToken.idValue(funcName)));
         } else {
             if (!functionHasNoParams(funcName)) {       // error if function has parameters but no arguments
                 error("invalid function call, function called with no arguments");
                 return null;
             } else {
                 // call function w no arguments
-                return GlobalIR.callCurrentFunction(funcName.getIdValue(), lexer.getIdentifierName(funcName.getIdValue()));
+                return GlobalIR.callCurrentFunction(PackedToken.idValue(funcName), lexer.getIdentifierName(PackedToken.idValue(funcName)));
             }
         }
     }
 
     // DONE
     public void ifStatement() {
-        System.out.println("if statement");
+        tracer.trace(TraceLevel.DEBUG, "if statement");
         next();                                          // consumes "if"
         BasicBlock parent = GlobalIR.enterIf();                // save parent ifBlock
         BasicBlock join = parent.getBranchTo();          // save join block
@@ -293,8 +361,8 @@ public class Parser {
         next();                                          // consumes "then"
         GlobalIR.setCurrentBlock(parent.getFallThruTo());      // current = then-block
         statementSequence();
-        if (checkIfTokenIs(peek(), "else")) {
-            System.out.println("else");
+        if (peek() == PackedToken.ELSE) {
+            tracer.trace(TraceLevel.DEBUG, "else");
             next();                                             // consumes "else"
             GlobalIR.setCurrentBlock(GlobalIR.generateElseBlock(parent));   // current = elseBlock
             statementSequence();
@@ -312,9 +380,10 @@ public class Parser {
 
     // DONE
     public void whileStatement() {
-        System.out.println("while statement");
+        tracer.trace(TraceLevel.DEBUG, "while statement");
+        BitSet assigned = assignedInWhile();
         next();                                     // consumes "while"
-        BasicBlock parent = GlobalIR.enterWhile();        // parent = whileBlock
+        BasicBlock parent = GlobalIR.enterWhile(assigned);        // parent = whileBlock
         relation();                                 // cmp instructions get added to while-block
         next();                                     // consumes "do"
         GlobalIR.setCurrentBlock(parent.getFallThruTo()); // current = while-body
@@ -322,6 +391,7 @@ public class Parser {
         GlobalIR.addBranchInstr(GlobalIR.getCurrentBlock());    // adds branch instruction from while-body to parent-while
         GlobalIR.setBranchInstr(parent);                  // updates operand of parent block's last branch instruction
         next();                                     // consumes "od"
+        GlobalIR.exitWhile();
         GlobalIR.setCurrentBlock(parent);                 // set currentBlock to block w phi's, for helper functions
         GlobalIR.propagateNestedWhile(parent);
         GlobalIR.setCurrentBlock(parent.getBranchTo());   // parent = while-follow
@@ -332,44 +402,46 @@ public class Parser {
     }
 
     public void returnStatement() {
-        System.out.println("return statement");
+        tracer.trace(TraceLevel.DEBUG, "return statement");
         next();     // consumes "return"
-        Token peek = peek();
-        if (peek.isUserDefinedIdentifier() || peek.isLiteral() ||
-                checkIfTokenIs(peek, "(") || checkIfTokenIs(peek, "call")) {
+        long peek = peek();
+        if (PackedToken.startsExpression(peek)) {
             Instruction res = expression();
-            UnaryInstr ret = new UnaryInstr(Instruction.Op.RET, res);
+            UnaryInstr ret = new UnaryInstr(context, Instruction.Op.RET, res);
             GlobalIR.insertInstrToCurrentBlock(ret);
         }
     }
 
     public void statement() {
-        System.out.println("statement");
-        Token peek = peek();
-        if (checkIfTokenIs(peek, "let")) {
-            assignment();
-        } else if (checkIfTokenIs(peek, "call")) {
-            voidFunctionCall();
-        } else if (checkIfTokenIs(peek, "if")) {
-            ifStatement();
-        } else if (checkIfTokenIs(peek, "while")) {
-            whileStatement();
-        } else if (checkIfTokenIs(peek, "return")) {
-            returnStatement();
-        } else {
-            error("invalid statement");
+        tracer.trace(TraceLevel.DEBUG, "statement");
+        long peek = peek();
+        switch (PackedToken.isKeyword(peek) ? PackedToken.idValue(peek) : 0) {
+            case IdentifierTable.LET:
+                assignment();
+                break;
+            case IdentifierTable.CALL:
+                voidFunctionCall();
+                break;
+            case IdentifierTable.IF:
+                ifStatement();
+                break;
+            case IdentifierTable.WHILE:
+                whileStatement();
+                break;
+            case IdentifierTable.RETURN:
+                returnStatement();
+                break;
+            default:
+                error("invalid statement");
         }
     }
 
     public void statementSequence() {
-        System.out.println("statement sequence");
+        tracer.trace(TraceLevel.DEBUG, "statement sequence");
         statement();
-        while (checkIfTokenIs(peek(), ";")) {
+        while (peek() == PackedToken.SEMICOLON) {
             next();
-            if (checkIfTokenIs(peek(), "let") || checkIfTokenIs(peek(), "call") ||
-                    checkIfTokenIs(peek(), "if") || checkIfTokenIs(peek(), "while") ||
-                    checkIfTokenIs(peek(), "return"))
-            {
+            if (PackedToken.startsStatement(peek())) {
                 statement();
             }
         }
@@ -378,30 +450,34 @@ public class Parser {
     /** add every var-declaration to the current block's symbol table, initialize to null */
     public void variableDeclaration() {
         // DONE
-        System.out.println("variable declaration");
+        tracer.trace(TraceLevel.DEBUG, "variable declaration");
         next();     // consumes "var"
-        Token var = next();     // consumes identifier
-        GlobalIR.addVarDecl(var.getIdValue());     // add identifier id to symbol table
-        System.out.println("variable declared: " + lexer.debugToken(var));
-        while (checkIfTokenIs(peek(), ",")) {
+        long var = next();     // consumes identifier
+        GlobalIR.addVarDecl(PackedToken.idValue(var));     // add identifier id to symbol table
+        if (tracer.isEnabled(TraceLevel.DEBUG)) {
+            tracer.trace(TraceLevel.DEBUG, "variable declared", lexer.debugToken(var));
+        }
+        while (peek() == PackedToken.COMMA) {
             next();     // consumes ","
             var = next();     // consumes identifier
-            GlobalIR.addVarDecl(var.getIdValue());     // add identifier id to symbol table
-            System.out.println("variable declared: " + lexer.debugToken(var));
+            GlobalIR.addVarDecl(PackedToken.idValue(var));     // add identifier id to symbol table
+            if (tracer.isEnabled(TraceLevel.DEBUG)) {
+                tracer.trace(TraceLevel.DEBUG, "variable declared", lexer.debugToken(var));
+            }
         }
         next();     // consumes ';'
     }
 
     public void functionDeclaration() {
-        System.out.println("function declaration");
+        tracer.trace(TraceLevel.DEBUG, "function declaration");
         GlobalIR.enterFunctionDef();
-        if (checkIfTokenIs(peek(), "void")) {
+        if (peek() == PackedToken.VOID) {
             next();     // consumes "void"
             GlobalIR.currentFunctionIsVoid();
         }
         next();     // consumes "function"
-        Token funcIdent = next();     // consumes identifier
-        GlobalIR.setCurrentFunctionIdent(funcIdent.getIdValue());       // save function name identifier
+        long funcIdent = next();     // consumes identifier
+        GlobalIR.setCurrentFunctionIdent(PackedToken.idValue(funcIdent));       // save function name identifier
         formalParameters();
         next();     // consumes ";"
         functionBody();
@@ -410,45 +486,45 @@ public class Parser {
     }
 
     public void formalParameters() {
-        System.out.println("formal parameters");
+        tracer.trace(TraceLevel.DEBUG, "formal parameters");
         next();     // consumes "("
-        if (peek().isUserDefinedIdentifier()) {
-            Token param = next();         // consumes identifier
-            GlobalIR.addParamToCurrentFunction(param.getIdValue());
-            while (checkIfTokenIs(peek(), ",")) {
+        if (PackedToken.isUserDefinedIdentifier(peek())) {
+            long param = next();         // consumes identifier
+            GlobalIR.addParamToCurrentFunction(PackedToken.idValue(param));
+            while (peek() == PackedToken.COMMA) {
                 next();     // consumes ","
                 param = next();     // consumes identifier
-                GlobalIR.addParamToCurrentFunction(param.getIdValue());
+                GlobalIR.addParamToCurrentFunction(PackedToken.idValue(param));
             }
         }
         next();     // consumes ")"
     }
 
     public void functionBody() {
-        System.out.println("function body");
+        tracer.trace(TraceLevel.DEBUG, "function body");
         GlobalIR.setCurrentBlock(GlobalIR.generateFallThruBlock(BasicBlock.BlockType.BASIC));      // generate new block for varDecl (linear, no branches)
         GlobalIR.initializeParamsVarDecl();     // assigns params to argument registers
-        while (checkIfTokenIs(peek(), "var")) {
+        while (peek() == PackedToken.VAR) {
             variableDeclaration();
         }
         next();     // consumes "{"
-        if (checkIfTokenIs(peek(), "let") || checkIfTokenIs(peek(), "call") ||
-                checkIfTokenIs(peek(), "if") || checkIfTokenIs(peek(), "while") ||
-                checkIfTokenIs(peek(), "return"))
-        {
+        if (PackedToken.startsStatement(peek())) {
             statementSequence();
         }
         next();     // consumes "}"
     }
 
     public void computation() {
-        System.out.println("computation");
+        tracer.trace(TraceLevel.DEBUG, "computation");
         next();     // consumes "main"
         GlobalIR.setCurrentBlock(GlobalIR.generateFallThruBlock(BasicBlock.BlockType.BASIC));      // generate new block for varDecl (linear, no branches)
-        while (checkIfTokenIs(peek(), "var")) {
+        while (peek() == PackedToken.VAR) {
             variableDeclaration();
         }
-        while (checkIfTokenIs(peek(), "void") || checkIfTokenIs(peek(), "function")) {
+        if (functionExecutor != null && (peek() == PackedToken.VOID || peek() == PackedToken.FUNCTION)) {
+            parallelFunctionDeclarations();
+        }
+        while (peek() == PackedToken.VOID || peek() == PackedToken.FUNCTION) {
             functionDeclaration();
         }
         next();     // consumes "{"
@@ -456,71 +532,155 @@ public class Parser {
         next();     // consumes "}"
         next();     // consumes "."
         if (!GlobalIR.error()) {
-            GlobalIR.propagateCommonSubexpr();
+            GlobalIR.optimize(PassManager.defaultPipeline(tracer));
         }
-        if (peek() == null) {
-            System.out.println("DONE PARSING!\n");
+        context.trimInstructionStore();             // the IR is complete, no instruction is added from here on
+        if (tracer.isEnabled(TraceLevel.INFO) && PackedToken.isEOF(peek())) {
+            tracer.trace(TraceLevel.INFO, "DONE PARSING!");
         }
         for (Integer var : GlobalIR.getUninitializedVarErrors()) {
-            System.out.printf("ERROR: VARIABLE %s NOT INITIALIZED ON ALL PATHS\n", lexer.getIdentifierName(var));
+            String message = String.format("VARIABLE %s NOT INITIALIZED ON ALL PATHS", lexer.getIdentifierName(var));
+            context.reportDiagnostic("ERROR: " + message);
+            tracer.trace(TraceLevel.ERROR, "uninitialized variable", message);
+        }
+        GlobalIR.printCFG(lexer.getIdentifierTable(), true);
+    }
+
+
+    /** pre-scans all function declarations (signature and brace matching only), builds each one on the function
+     *  executor in a context forked from this one, then joins them in declaration order, so functions, instruction ids
+     *  and block ids come out exactly as in a serial parse */
+    private void parallelFunctionDeclarations() {
+        tracer.trace(TraceLevel.DEBUG, "parallel function declarations");
+        lexer.bufferAllTokens();
+        List<Function> headers = new ArrayList<>();
+        List<Future<Parser>> builds = new ArrayList<>();
+        int pos = lexer.tokenIndex();
+        int argRegisters = 0;
+        while (lexer.tokenAt(pos) == PackedToken.VOID || lexer.tokenAt(pos) == PackedToken.FUNCTION) {
+            int start = pos;
+            boolean isVoid = lexer.tokenAt(pos) == PackedToken.VOID;
+            pos += isVoid ? 2 : 1;                              // "void" "function"
+            int functionId = PackedToken.idValue(lexer.tokenAt(pos++));
+            int params = 0;
+            while (lexer.tokenAt(pos) != PackedToken.RPAREN && !PackedToken.isEOF(lexer.tokenAt(pos))) {
+                if (PackedToken.isUserDefinedIdentifier(lexer.tokenAt(pos++))) {
+                    params++;
+                }
+            }
+            while (lexer.tokenAt(pos) != PackedToken.LBRACE && !PackedToken.isEOF(lexer.tokenAt(pos))) {
+                pos++;                                          // var declarations of the body
+            }
+            int depth = 0;
+            do {
+                if (lexer.tokenAt(pos) == PackedToken.LBRACE) {
+                    depth++;
+                } else if (lexer.tokenAt(pos) == PackedToken.RBRACE) {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0 && !PackedToken.isEOF(lexer.tokenAt(pos)));
+            pos++;                                              // ";"
+
+            Lexer functionTokens = lexer.sliceTokens(start, pos);
+            CompilationContext forked = context.fork(argRegisters);
+            List<Function> declaredBefore = new ArrayList<>(headers);
+            builds.add(functionExecutor.submit(() -> {
+                Parser functionParser = new Parser(this, functionTokens, forked, declaredBefore);
+                functionParser.functionDeclaration();
+                return functionParser;
+            }));
+            headers.add(Function.header(functionId, isVoid));
+            argRegisters += params;
         }
-        GlobalIR.printCFG(lexer.getIdentifiersMappedToId(), true);
+        try {
+            for (Future<Parser> build : builds) {
+                Parser functionParser = build.get();
+                context.join(functionParser.context);
+                GlobalIR.addFunction(functionParser.GlobalIR.getCurrentFunction());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while building functions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("building function failed", e.getCause());
+        }
+        lexer.seekToken(pos);
     }
 
 
     // ------------ HELPER FUNCTIONS ------------- //
 
-    private Instruction computeRelOpBranchInstr(Token relOp) {
-        // target Instruction has to be updated later else/join block has been generated
-        if (checkIfTokenIs(relOp, "==")) {
-            return new UnaryInstr(Instruction.Op.BNE, null);
-        }
-        else if (checkIfTokenIs(relOp, "!=")) {
-            return new UnaryInstr(Instruction.Op.BEQ, null);
-        }
-        else if (checkIfTokenIs(relOp, "<")) {
-            return new UnaryInstr(Instruction.Op.BGE, null);
-        }
-        else if (checkIfTokenIs(relOp, "<=")) {
-            return new UnaryInstr(Instruction.Op.BGT, null);
-        }
-        else if (checkIfTokenIs(relOp, ">")) {
-            return new UnaryInstr(Instruction.Op.BLE, null);
+    /** identifier ids assigned ("let id <-") anywhere in the while statement starting at the next token, nested
+     *  statements included. The lexer scans ahead only up to the matching "od" (or EOF if it is missing), without
+     *  consuming or keeping the tokens. That one scan records the sets of the whiles nested in it, in source order,
+     *  which are handed out as the parser reaches them. */
+    private BitSet assignedInWhile() {
+        if (!nestedLoopAssignments.isEmpty()) {
+            return nestedLoopAssignments.poll();
+        }
+        List<BitSet> scanned = new ArrayList<>();   // sets of every while scanned, in the order of their "while"
+        ArrayDeque<BitSet> open = new ArrayDeque<>();
+        long[] previous = {PackedToken.EOF};
+        lexer.scanAhead(token -> {
+            if (token == PackedToken.WHILE) {
+                BitSet assigned = new BitSet();
+                scanned.add(assigned);
+                open.push(assigned);
+            } else if (previous[0] == PackedToken.LET && PackedToken.isUserDefinedIdentifier(token) && !open.isEmpty()) {
+                open.peek().set(PackedToken.idValue(token));
+            } else if (token == PackedToken.OD && !open.isEmpty()) {
+                BitSet closed = open.pop();
+                if (open.isEmpty()) {
+                    return false;
+                }
+                open.peek().or(closed);
+            }
+            previous[0] = token;
+            return true;
+        });
+        while (open.size() > 1) {                   // missing "od": everything up to EOF belongs to the loops still open
+            BitSet unterminated = open.pop();
+            open.peek().or(unterminated);
         }
-        else {      // ">="
-            return new UnaryInstr(Instruction.Op.BLT, null);
+        if (scanned.isEmpty()) {
+            return new BitSet();
         }
+        nestedLoopAssignments.addAll(scanned.subList(1, scanned.size()));
+        return scanned.get(0);
     }
 
-    private boolean functionHasNoParams(Token funcName) {
-        return true;
+    private Instruction computeRelOpBranchInstr(long relOp) {
+        // target Instruction has to be updated later else/join block has been generated
+        return new UnaryInstr(context, REL_OP_BRANCH[PackedToken.idValue(relOp)], null);
     }
 
-    private boolean checkIfTokenIs(Token token, String sym) {
-        return token.getIdValue() == this.lexer.getIdentifierID(sym) || token.getIdValue() == this.lexer.getSymbolID(sym);
+    private boolean functionHasNoParams(long funcName) {
+        return true;
     }
 
-    private Token peek() {      // looks at next token without consuming. Null at EOF.
-        return this.lexer.peek();
+    private long peek() {      // looks at next packed token without consuming. PackedToken.EOF at EOF.
+        return this.lexer.peekPacked(0);
     }
 
-    private Token next() {      // consumes next token
+    private long next() {      // consumes next packed token
         try {
-            return this.lexer.next();
-        } catch (IOException e) {
-            System.out.println("frontend.Parser next(): IO error");
+            return this.lexer.nextPacked();
         } catch (TinySyntaxError e) {
-            System.out.println("frontend.Parser next(): tiny syntax error");
+            context.reportDiagnostic(e.getMessage());
+            tracer.trace(TraceLevel.ERROR, "tiny syntax error", e.getMessage());
         }
-        return null;
+        return PackedToken.EOF;
     }
 
     private void error(String message) {
-        System.out.println("SYNTAX ERROR: " + message);
+        context.reportDiagnostic("SYNTAX ERROR: " + message);
+        tracer.trace(TraceLevel.ERROR, "syntax error", message);
     }
 
     private void warning(String message) {
-        System.out.println("COMPILE WARNING: " + message);
+        context.reportDiagnostic("COMPILE WARNING: " + message);
+        tracer.trace(TraceLevel.WARNING, "compile warning", message);
     }
 
 
@@ -528,7 +688,7 @@ public class Parser {
 
     public static void main(String[] args) {
         Lexer lexer = new Lexer("tests/peers/test99.tiny");
-        Parser parser = new Parser(lexer);
+        Parser parser = new Parser(lexer, new Tracer(TraceLevel.DEBUG, new ConsoleTraceSink()));
         parser.parse();
     }
 }
@@ -22,16 +22,16 @@ public class Token {
         return this.idOrValue;
     }
 
-    public boolean isSymbol() { return this.tokenType.compareTo(TokenType.SYMBOL) == 0; }
+    public boolean isSymbol() { return this.tokenType == TokenType.SYMBOL; }
 
-    public boolean isLiteral() { return this.tokenType.compareTo(TokenType.LITERAL) == 0; }
+    public boolean isLiteral() { return this.tokenType == TokenType.LITERAL; }
 
     public boolean isUserDefinedIdentifier() {
-        return this.tokenType.compareTo(TokenType.IDENTIFIER) == 0 && this.idOrValue > 14;
+        return this.tokenType == TokenType.IDENTIFIER && this.idOrValue > 14;
     }
 
     public boolean isRelationalOp() {
-        return this.tokenType.compareTo(TokenType.SYMBOL) == 0 && this.idOrValue >= 1 && this.idOrValue <= 6;
+        return this.tokenType == TokenType.SYMBOL && this.idOrValue >= 1 && this.idOrValue <= 6;
     }
 
     public static void main(String[] args) {
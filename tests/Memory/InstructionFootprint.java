@@ -0,0 +1,65 @@
+import IR.Context.CompilationContext;
+import frontend.Lexer;
+import frontend.Parser;
+import trace.Tracer;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/** INSTRUCTION FOOTPRINT
+ *  size check for the IR: compiles a large generated program, keeps its CompilationContext open so the whole IR stays
+ *  reachable, and reports the heap retained per generated instruction (instruction handles and store columns, use
+ *  lists, blocks, symbol and value tables). Exits with status 1 if it is above the budget, which is kept below the
+ *  footprint of the primitive-field instruction layout so any growth back towards it fails.
+ *
+ *  usage:  java -cp <classes> InstructionFootprint [statements] [budget bytes per instruction]
+ *  */
+public class InstructionFootprint {
+
+    private static final int DEFAULT_STATEMENTS = 50000;
+    private static final int DEFAULT_BUDGET = 145;     // measured 133.2, the primitive-field layout measured 154.3
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STATEMENTS;
+        int budget = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BUDGET;
+        String source = program(statements);
+        compile(source);                            // warm-up, so class loading and JIT data are not measured
+
+        long before = usedHeap();
+        try (CompilationContext context = new CompilationContext(Tracer.off(), new PrintStream(OutputStream.nullOutputStream()))) {
+            new Parser(Lexer.fromSource(source), context).parse();
+            long retained = usedHeap() - before;
+            int instructions = context.instructionIdLimit() - 1;
+            double perInstruction = (double) retained / instructions;
+            System.out.printf("%d instructions, %d blocks, %.1f KiB retained, %.1f bytes per instruction (budget %d)\n",
+                    instructions, context.getAllBlocks().size(), retained / 1024.0, perInstruction, budget);
+            if (perInstruction > budget) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void compile(String source) {
+        try (CompilationContext context = new CompilationContext(Tracer.off(), new PrintStream(OutputStream.nullOutputStream()))) {
+            new Parser(Lexer.fromSource(source), context).parse();
+        }
+    }
+
+    /** straight-line program, so the few blocks and their tables do not count: every statement reads an input and
+     *  folds it into b with arithmetic that neither simplifies nor matches an earlier expression */
+    private static String program(int statements) {
+        StringBuilder source = new StringBuilder("main var a, b; {\n  let b <- call InputNum();\n");
+        for (int i = 0; i < statements; i++) {
+            source.append("  let a <- call InputNum(); let b <- b * a + ").append(i % 97 + 2).append(" - a;\n");
+        }
+        return source.append("  call OutputNum(b)\n}.\n").toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,10 @@
+package trace;
+
+/** writes every trace event straight to System.out, in the "event: detail" format the compiler used to print */
+public class ConsoleTraceSink implements TraceSink {
+
+    @Override
+    public void event(TraceLevel level, String event, String detail) {
+        System.out.println(detail == null ? event : event + ": " + detail);
+    }
+}
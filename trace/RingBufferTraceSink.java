@@ -0,0 +1,59 @@
+package trace;
+
+import java.io.PrintStream;
+
+/** RING BUFFER TRACE SINK
+ *  keeps the most recent trace events in fixed-size parallel arrays, older events are overwritten. Nothing is written
+ *  anywhere until dump() is called, so a trace can be kept on in production and only looked at when something fails.
+ *  Events may come from several threads of one compile (functions built in parallel), so access is synchronized.
+ *  */
+public class RingBufferTraceSink implements TraceSink {
+
+    private final TraceLevel[] levels;
+    private final String[] events;
+    private final String[] details;
+    private final long[] timestamps;        // System.nanoTime() when the event was recorded
+    private int head = 0;                   // index the next event is written to
+    private int count = 0;                  // number of events held, at most capacity
+
+    public RingBufferTraceSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("trace buffer capacity must be positive: " + capacity);
+        }
+        levels = new TraceLevel[capacity];
+        events = new String[capacity];
+        details = new String[capacity];
+        timestamps = new long[capacity];
+    }
+
+    @Override
+    public synchronized void event(TraceLevel level, String event, String detail) {
+        levels[head] = level;
+        events[head] = event;
+        details[head] = detail;
+        timestamps[head] = System.nanoTime();
+        head = (head + 1) % levels.length;
+        if (count < levels.length) {
+            count++;
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized void clear() {
+        head = count = 0;
+    }
+
+    /** writes the held events oldest first, with nanoseconds relative to the oldest held event */
+    public synchronized void dump(PrintStream out) {
+        int start = (head - count + levels.length) % levels.length;
+        long origin = count > 0 ? timestamps[start] : 0;
+        for (int n = 0; n < count; n++) {
+            int i = (start + n) % levels.length;
+            out.printf("[%d ns] %s %s%s\n", timestamps[i] - origin, levels[i], events[i],
+                    details[i] == null ? "" : ": " + details[i]);
+        }
+    }
+}
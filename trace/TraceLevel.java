@@ -0,0 +1,10 @@
+package trace;
+
+/** trace levels, ordered from least to most verbose. A tracer at level L records every event at L or below. */
+public enum TraceLevel {
+    OFF,
+    ERROR,          // syntax errors, uninitialized variable errors
+    WARNING,        // compile warnings
+    INFO,           // compile milestones
+    DEBUG           // every parser production and IR decision
+}
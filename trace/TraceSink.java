@@ -0,0 +1,8 @@
+package trace;
+
+/** destination of trace events. Only called by Tracer once the event's level is known to be enabled. */
+public interface TraceSink {
+
+    /** detail is null for events that carry no detail */
+    void event(TraceLevel level, String event, String detail);
+}
@@ -0,0 +1,47 @@
+package trace;
+
+/** TRACER
+ *  level-controlled front end of the tracing subsystem. Callers pass constant event names, anything that costs work to
+ *  build (strings, token lookahead) must be guarded with isEnabled() so a disabled tracer does no work at all:
+ *
+ *      if (tracer.isEnabled(TraceLevel.DEBUG)) {
+ *          tracer.trace(TraceLevel.DEBUG, "variable reference", lexer.debugToken(peek()));
+ *      }
+ *  */
+public class Tracer {
+
+    private static final Tracer OFF = new Tracer(TraceLevel.OFF, null);
+
+    private final TraceLevel level;
+    private final TraceSink sink;
+
+    public Tracer(TraceLevel level, TraceSink sink) {
+        this.level = sink == null ? TraceLevel.OFF : level;
+        this.sink = sink;
+    }
+
+    /** a tracer that records nothing */
+    public static Tracer off() {
+        return OFF;
+    }
+
+    public boolean isEnabled(TraceLevel eventLevel) {
+        return eventLevel.ordinal() <= level.ordinal() && level != TraceLevel.OFF;
+    }
+
+    public void trace(TraceLevel eventLevel, String event) {
+        if (isEnabled(eventLevel)) {
+            sink.event(eventLevel, event, null);
+        }
+    }
+
+    public void trace(TraceLevel eventLevel, String event, String detail) {
+        if (isEnabled(eventLevel)) {
+            sink.event(eventLevel, event, detail);
+        }
+    }
+
+    public TraceSink getSink() {
+        return sink;
+    }
+}